@@ -0,0 +1,77 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cx.ath.venator.textwrapview.TextBreaker;
+
+/**
+ * Cost of balanced line breaking compared to greedy breaking of the same
+ * texts and width profiles.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BreakStrategyBenchmark {
+	@Param({ "TITLE", "PARAGRAPH", "PARAGRAPHS" })
+	public Corpus corpus;
+
+	@Param({ "3@320", "-1@320", "tabbed" })
+	public String profile;
+
+	@Param({ "greedy", "balanced" })
+	public String strategy;
+
+	private TextBreaker breaker;
+	private TableWidthMeasurer measurer;
+	// two equal texts, so that the breaker doesn't skip breaking the same instance again
+	private String[] texts;
+	private int next;
+
+	@Setup
+	public void setup() {
+		measurer = new TableWidthMeasurer(14);
+		breaker = TextBreakerBenchmark.newBreaker(profile);
+		breaker.setBreakStrategy(strategy.equals("balanced") ? TextBreaker.BREAK_STRATEGY_BALANCED
+				: TextBreaker.BREAK_STRATEGY_GREEDY);
+		String text = corpus.generate();
+		texts = new String[] { text, new String(text) };
+	}
+
+	@Benchmark
+	public float breakText() {
+		next ^= 1;
+		return breaker.breakText(texts[next], measurer);
+	}
+}
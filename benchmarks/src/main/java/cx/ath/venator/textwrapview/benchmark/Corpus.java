@@ -0,0 +1,115 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview.benchmark;
+
+import java.util.Random;
+
+/**
+ * Deterministic input texts for the benchmarks, generated from a fixed seed.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public enum Corpus {
+	/** A list row title, a few words. */
+	TITLE {
+		@Override
+		String generate(Random r) {
+			return words(r, 8);
+		}
+	},
+	/** A long article paragraph. */
+	PARAGRAPH {
+		@Override
+		String generate(Random r) {
+			return words(r, 600);
+		}
+	},
+	/** A sentence with long unbreakable URLs and hashes, which need hard wrapping. */
+	URL {
+		@Override
+		String generate(Random r) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 6; i++) {
+				sb.append(words(r, 4)).append(" https://example.com/");
+				for (int j = 0; j < 8; j++)
+					sb.append(WORDS[r.nextInt(WORDS.length)]).append(j % 3 == 2 ? '/' : '-');
+				sb.append("?id=").append(Long.toHexString(r.nextLong())).append(Long.toHexString(r.nextLong())).append(' ');
+			}
+			return sb.toString().trim();
+		}
+	},
+	/** A deep file path without spaces, as shown by a file browser row. */
+	PATH {
+		@Override
+		String generate(Random r) {
+			StringBuilder sb = new StringBuilder("/storage/emulated/0");
+			for (int i = 0; i < 12; i++)
+				sb.append('/').append(WORDS[r.nextInt(WORDS.length)]).append(i % 2 == 0 ? '_' : '-').append(r.nextInt(1000));
+			return sb.append(".tar.gz").toString();
+		}
+	},
+	/** Chinese-like text without spaces, which is hard wrapped. */
+	CJK {
+		@Override
+		String generate(Random r) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 800; i++)
+				sb.append(i % 40 == 39 ? '。' : (char) (0x4e00 + r.nextInt(0x1000)));
+			return sb.toString();
+		}
+	},
+	/** A chat or log screen, many short paragraphs. */
+	PARAGRAPHS {
+		@Override
+		String generate(Random r) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 300; i++)
+				sb.append(words(r, 3 + r.nextInt(30))).append('\n');
+			return sb.toString();
+		}
+	},
+	/** A book-sized document, thousands of paragraphs. */
+	DOCUMENT {
+		@Override
+		String generate(Random r) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 5000; i++)
+				sb.append(words(r, 10 + r.nextInt(120))).append('\n');
+			return sb.toString();
+		}
+	};
+
+	private static final String[] WORDS = ("lorem ipsum dolor sit amet consectetur adipiscing elit vivamus turpis libero "
+			+ "fringilla at ultrices ut porttitor tellus donec et mauris sed erat vulputate mollis praesent purus sem non "
+			+ "dapibus lectus nam elementum odio aenean auctor vitae feugiat quis faucibus diam pharetra vestibulum ante "
+			+ "posuere semper luctus lobortis nulla tincidunt rhoncus Quisque Nunc malesuada Vestibulum").split(" ");
+
+	abstract String generate(Random r);
+
+	public String generate() {
+		return generate(new Random(42));
+	}
+
+	static String words(Random r, int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i != 0)
+				sb.append(' ');
+			sb.append(WORDS[r.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+}
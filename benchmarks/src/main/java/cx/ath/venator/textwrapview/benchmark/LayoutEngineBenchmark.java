@@ -0,0 +1,88 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cx.ath.venator.textwrapview.LayoutEngine;
+import cx.ath.venator.textwrapview.LayoutRequest;
+import cx.ath.venator.textwrapview.TextBreaker;
+import cx.ath.venator.textwrapview.TextLayout;
+
+/**
+ * Throughput of breaking shared requests on every core, with the per-thread
+ * breakers of LayoutEngine compared to a new TextBreaker per text.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class LayoutEngineBenchmark {
+	@Param({ "TITLE", "PARAGRAPH" })
+	public Corpus corpus;
+
+	private final LayoutEngine engine = new LayoutEngine(null);
+	// two equal texts, so that a breaker doesn't skip breaking the same instance again
+	private LayoutRequest[] requests;
+
+	@State(Scope.Thread)
+	public static class Turn {
+		int next;
+	}
+
+	@Setup
+	public void setup() {
+		TableWidthMeasurer measurer = new TableWidthMeasurer(14);
+		String text = corpus.generate();
+		requests = new LayoutRequest[2];
+		for (int i = 0; i < 2; i++)
+			requests[i] = new LayoutRequest.Builder(new String(text), measurer).setMaxWidthLines(320, 3).build();
+	}
+
+	@Benchmark
+	public TextLayout engine(Turn turn) {
+		turn.next ^= 1;
+		return engine.breakText(requests[turn.next]);
+	}
+
+	@Benchmark
+	public TextLayout newBreaker(Turn turn) {
+		turn.next ^= 1;
+		LayoutRequest request = requests[turn.next];
+		TextBreaker breaker = new TextBreaker();
+		breaker.setMaxWidthLines(request.getMaxWidth(), request.getMaxLines());
+		breaker.breakText(request.getText(), request.getMeasurer());
+		return breaker.getLayout();
+	}
+}
@@ -0,0 +1,90 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cx.ath.venator.textwrapview.LayoutEngine;
+import cx.ath.venator.textwrapview.LayoutRequest;
+import cx.ath.venator.textwrapview.TextLayout;
+
+/**
+ * Time to break a whole document without a line limit, on one thread or
+ * split in paragraph chunks over a pool of the given size.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParallelBreakBenchmark {
+	@Param({ "0", "2", "4", "8" })
+	public int threads;
+
+	@Param({ "16384" })
+	public int threshold;
+
+	private ExecutorService pool;
+	private LayoutEngine engine;
+	// two equal texts, so that the engine doesn't skip breaking the same instance again
+	private LayoutRequest[] requests;
+	private int next;
+
+	@Setup
+	public void setup() {
+		if (threads > 0) {
+			pool = Executors.newFixedThreadPool(threads);
+			engine = new LayoutEngine(null, pool, threshold);
+		} else {
+			engine = new LayoutEngine(null);
+		}
+		TableWidthMeasurer measurer = new TableWidthMeasurer(14);
+		String text = Corpus.DOCUMENT.generate();
+		requests = new LayoutRequest[2];
+		for (int i = 0; i < 2; i++)
+			requests[i] = new LayoutRequest.Builder(new String(text), measurer).setMaxWidthLines(320, -1).build();
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (pool != null)
+			pool.shutdown();
+	}
+
+	@Benchmark
+	public TextLayout breakText() {
+		next ^= 1;
+		return engine.breakText(requests[next]);
+	}
+}
@@ -0,0 +1,83 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview.benchmark;
+
+import cx.ath.venator.textwrapview.StyleKey;
+import cx.ath.venator.textwrapview.WidthMeasurer;
+
+/**
+ * Deterministic proportional font model: ASCII advances come from a table
+ * in 1/1000 em (roughly a sans-serif face), CJK and fullwidth characters
+ * take one em, combining marks none and everything else 0.55 em.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class TableWidthMeasurer implements WidthMeasurer {
+	// advances of ' ' to '~'
+	private static final short[] ASCII = {
+			278, 278, 355, 556, 556, 889, 667, 191, 333, 333, 389, 584, 278, 333, 278, 278, // ' ' to '/'
+			556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 278, 278, 584, 584, 584, 556, // '0' to '?'
+			1015, 667, 667, 722, 722, 667, 611, 778, 722, 278, 500, 667, 556, 833, 722, 778, // '@' to 'O'
+			667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 278, 278, 278, 469, 556, // 'P' to '_'
+			333, 556, 556, 500, 556, 556, 278, 556, 556, 222, 222, 500, 222, 833, 556, 556, // '`' to 'o'
+			556, 556, 333, 500, 278, 556, 500, 722, 500, 500, 500, 334, 260, 334, 584 // 'p' to '~'
+	};
+
+	private final float textSize;
+	private final float[] advances = new float[128];
+	private final StyleKey styleKey;
+
+	public TableWidthMeasurer(float textSize) {
+		this.textSize = textSize;
+		for (int c = 0; c < 128; c++)
+			advances[c] = (c >= ' ' && c <= '~' ? ASCII[c - ' '] : 550) * textSize / 1000f;
+		this.styleKey = new StyleKey("table", textSize, 1, 0, 0);
+	}
+
+	private float advance(char c) {
+		if (c < 128)
+			return advances[c];
+		if ((c >= 0x2e80 && c <= 0xa4cf) || (c >= 0xac00 && c <= 0xd7a3) || (c >= 0xff00 && c <= 0xff60))
+			return textSize;
+		if (c >= 0x0300 && c <= 0x036f)
+			return 0;
+		return 0.55f * textSize;
+	}
+
+	@Override
+	public float measureText(CharSequence text, int start, int end) {
+		float width = 0;
+		for (int i = start; i < end; i++)
+			width += advance(text.charAt(i));
+		return width;
+	}
+
+	@Override
+	public float getTextWidths(CharSequence text, int start, int end, float[] widths) {
+		float width = 0;
+		for (int i = start; i < end; i++) {
+			float a = advance(text.charAt(i));
+			widths[i - start] = a;
+			width += a;
+		}
+		return width;
+	}
+
+	@Override
+	public StyleKey getStyleKey() {
+		return styleKey;
+	}
+}
@@ -0,0 +1,96 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cx.ath.venator.textwrapview.MonospaceWidthMeasurer;
+import cx.ath.venator.textwrapview.TextBreaker;
+import cx.ath.venator.textwrapview.WidthMeasurer;
+
+/**
+ * Throughput of TextBreaker.breakText() for every corpus, width profile and
+ * font model. Run with "-prof gc" to get the allocation rate as well.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TextBreakerBenchmark {
+	@Param({ "TITLE", "PARAGRAPH", "URL", "CJK", "PARAGRAPHS" })
+	public Corpus corpus;
+
+	/**
+	 * Width profile: "maxLines@width" (-1 meaning no limit) or "tabbed", the
+	 * maxWidths of an ImageTextWrapView with 3 lines next to the image.
+	 */
+	@Param({ "2@320", "5@320", "-1@320", "tabbed" })
+	public String profile;
+
+	@Param({ "monospace", "proportional" })
+	public String font;
+
+	private TextBreaker breaker;
+	private WidthMeasurer measurer;
+	// two equal texts, so that the breaker doesn't skip breaking the same instance again
+	private String[] texts;
+	private int next;
+
+	@Setup
+	public void setup() {
+		measurer = font.equals("monospace") ? new MonospaceWidthMeasurer(8) : new TableWidthMeasurer(14);
+		breaker = newBreaker(profile);
+		String text = corpus.generate();
+		texts = new String[] { text, new String(text) };
+	}
+
+	static TextBreaker newBreaker(String profile) {
+		TextBreaker breaker = new TextBreaker();
+		if (profile.equals("tabbed")) {
+			int[] maxWidths = new int[8];
+			Arrays.fill(maxWidths, 0, 3, 220);
+			Arrays.fill(maxWidths, 3, maxWidths.length, 320);
+			breaker.setMaxWidths(maxWidths);
+		} else {
+			int at = profile.indexOf('@');
+			breaker.setMaxWidthLines(Integer.parseInt(profile.substring(at + 1)), Integer.parseInt(profile.substring(0, at)));
+		}
+		return breaker;
+	}
+
+	@Benchmark
+	public float breakText() {
+		next ^= 1;
+		return breaker.breakText(texts[next], measurer);
+	}
+}
@@ -16,7 +16,10 @@
 package cx.ath.venator.textwrapview;
 
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
 
 /**
  * Resizes a bitmap so that its lesser size equals the given size
@@ -59,4 +62,52 @@ public class BitmapCropper {
 		}
 		return ret;
 	}
+
+	/**
+	 * Same as centerCropBitmap(bitmap, newW, newH), but draws the result in a
+	 * single step into a bitmap taken from pool when there is one of the right
+	 * size, and never allocates an intermediate scaled bitmap.
+	 */
+	public static Bitmap centerCropBitmap(Bitmap bitmap, int newW, int newH, BitmapPool pool) {
+		return centerCropInto(bitmap, newW, newH, pool != null ? pool.get(newW, newH, Bitmap.Config.ARGB_8888) : null);
+	}
+
+	/**
+	 * Draws the center crop of bitmap into ret, a mutable newW x newH
+	 * ARGB_8888 bitmap, or into a new bitmap if ret is null.
+	 */
+	static Bitmap centerCropInto(Bitmap bitmap, int newW, int newH, Bitmap ret) {
+		if (ret == null)
+			ret = Bitmap.createBitmap(newW, newH, Bitmap.Config.ARGB_8888);
+		else
+			ret.eraseColor(0);
+
+		Rect src = getCenterCropRect(bitmap.getWidth(), bitmap.getHeight(), newW, newH, null);
+		Canvas canvas = new Canvas(ret);
+		canvas.drawBitmap(bitmap, src, new Rect(0, 0, newW, newH), new Paint(Paint.FILTER_BITMAP_FLAG));
+		return ret;
+	}
+
+	/**
+	 * Computes the region of a width x height bitmap which centerCropBitmap()
+	 * would scale to newW x newH, so that it can be drawn directly with
+	 * Canvas.drawBitmap(bitmap, src, dst, paint) without creating any
+	 * intermediate bitmap.
+	 */
+	public static Rect getCenterCropRect(int width, int height, int newW, int newH, Rect out) {
+		if (out == null)
+			out = new Rect();
+		if (height < width) {
+			float scale = ((float) newH) / height;
+			int w = Math.min(width, Math.round(newW / scale));
+			int x = (width - w) / 2;
+			out.set(x, 0, x + w, height);
+		} else {
+			float scale = ((float) newW) / width;
+			int h = Math.min(height, Math.round(newH / scale));
+			int y = (height - h) / 2;
+			out.set(0, y, width, y + h);
+		}
+		return out;
+	}
 }
@@ -0,0 +1,245 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Decodes BitmapSources on a background executor, center-crops them to the
+ * requested size and delivers the thumbnails on the main thread, going
+ * through a ThumbnailCache. Requests can be cancelled, e.g. when the view
+ * which asked for a bitmap is bound to another item.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class BitmapLoader {
+	private static final String TAG = "BitmapLoader";
+	private static final int DEFAULT_THREADS = 2;
+
+	private static BitmapLoader defaultLoader;
+	private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+	public interface Callback {
+		/**
+		 * Called on the main thread, bitmap is null if decoding failed. Not
+		 * called if request was cancelled.
+		 */
+		public void onBitmapLoaded(Request request, Bitmap bitmap);
+	}
+
+	private final Executor executor;
+	private final ThumbnailCache cache;
+
+	/**
+	 * Loads thumbnails on executor, looking them up in and adding them to
+	 * cache.
+	 */
+	public BitmapLoader(Executor executor, ThumbnailCache cache) {
+		this.executor = executor;
+		this.cache = cache;
+	}
+
+	public ThumbnailCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * The loader shared by every ImageTextWrapView, backed by a small pool of
+	 * low priority threads.
+	 */
+	public static synchronized BitmapLoader getDefault() {
+		if (defaultLoader == null) {
+			ExecutorService executor = Executors.newFixedThreadPool(DEFAULT_THREADS, new ThreadFactory() {
+				private int count;
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, TAG + " #" + (++count));
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+			defaultLoader = new BitmapLoader(executor, ThumbnailCache.getDefault());
+		}
+		return defaultLoader;
+	}
+
+	/**
+	 * Decodes source and center-crops it to reqWidth x reqHeight, unless the
+	 * thumbnail is cached already. The bitmap passed to the callback has been
+	 * acquired from the cache on behalf of the caller, which must release it
+	 * with getCache().release(request.getKey(), bitmap) when done.
+	 */
+	public Request load(BitmapSource source, int reqWidth, int reqHeight, Callback callback) {
+		Request request = new Request(new ThumbnailCache.Key(source, reqWidth, reqHeight), cache, callback);
+		executor.execute(request);
+		return request;
+	}
+
+	/**
+	 * Decodes and center-crops the thumbnail of source into the cache on the
+	 * calling thread, unless it is cached already, without acquiring it. Meant
+	 * for prefetching, e.g. from RowPrefetcher.Rows.prefetch(), so that a
+	 * later load() finds it in the cache.
+	 */
+	public void prefetch(BitmapSource source, int reqWidth, int reqHeight) {
+		Request request = new Request(new ThumbnailCache.Key(source, reqWidth, reqHeight), cache, null);
+		Bitmap thumbnail = request.decode();
+		if (thumbnail != null)
+			cache.release(request.getKey(), thumbnail);
+	}
+
+	public static final class Request implements Runnable {
+		private final ThumbnailCache.Key key;
+		private final ThumbnailCache cache;
+		private final Callback callback;
+		private final BitmapFactory.Options opts = new BitmapFactory.Options();
+		private volatile boolean cancelled;
+		private volatile boolean done;
+		// for LayoutMetrics, 0 if the thumbnail was cached
+		private long decodeNanos;
+		private int bitmapAllocations;
+
+		Request(ThumbnailCache.Key key, ThumbnailCache cache, Callback callback) {
+			this.key = key;
+			this.cache = cache;
+			this.callback = callback;
+		}
+
+		public ThumbnailCache.Key getKey() {
+			return key;
+		}
+
+		public BitmapSource getSource() {
+			return key.getSource();
+		}
+
+		public int getRequestedWidth() {
+			return key.getWidth();
+		}
+
+		public int getRequestedHeight() {
+			return key.getHeight();
+		}
+
+		/**
+		 * Time spent decoding and cropping the thumbnail, 0 if it was cached.
+		 * Valid once the callback is called.
+		 */
+		long getDecodeNanos() {
+			return decodeNanos;
+		}
+
+		/**
+		 * The number of bitmaps the crop allocated instead of taking them from
+		 * the pool.
+		 */
+		int getBitmapAllocations() {
+			return bitmapAllocations;
+		}
+
+		/**
+		 * Stops the decoding if possible; the callback won't be called.
+		 */
+		public void cancel() {
+			cancelled = true;
+			opts.requestCancelDecode();
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Whether the callback has been called.
+		 */
+		public boolean isDone() {
+			return done;
+		}
+
+		@Override
+		public void run() {
+			if (cancelled)
+				return;
+			final Bitmap result = decode();
+			if (cancelled) {
+				release(result);
+				return;
+			}
+			mainHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					if (!cancelled) {
+						done = true;
+						callback.onBitmapLoaded(Request.this, result);
+					} else {
+						release(result);
+					}
+				}
+			});
+		}
+
+		/**
+		 * Returns the thumbnail acquired from the cache, decoding and adding it
+		 * first if needed, or null if it can't be decoded.
+		 */
+		Bitmap decode() {
+			Bitmap thumbnail = cache.acquire(key);
+			if (thumbnail == null) {
+				boolean trace = LayoutMetrics.isEnabled();
+				if (trace)
+					LayoutMetrics.beginSection("BitmapLoader#decode");
+				long start = System.nanoTime();
+				try {
+					Bitmap decoded = key.getSource().decode(key.getWidth(), key.getHeight(), opts, cache.getPool());
+					if (decoded != null) {
+						Bitmap target = cache.getPool().get(key.getWidth(), key.getHeight(), Bitmap.Config.ARGB_8888);
+						if (target == null)
+							bitmapAllocations++;
+						thumbnail = BitmapCropper.centerCropInto(decoded, key.getWidth(), key.getHeight(), target);
+						cache.getPool().put(decoded);
+						thumbnail = cache.putAcquired(key, thumbnail);
+					}
+				} catch (IOException e) {
+					Log.w(TAG, "Cannot decode " + key.getSource(), e);
+				} catch (OutOfMemoryError e) {
+					Log.w(TAG, "Out of memory decoding " + key.getSource(), e);
+				} finally {
+					decodeNanos = System.nanoTime() - start;
+					if (trace)
+						LayoutMetrics.endSection();
+				}
+			}
+			return thumbnail;
+		}
+
+		private void release(Bitmap thumbnail) {
+			if (thumbnail != null)
+				cache.release(key, thumbnail);
+		}
+	}
+}
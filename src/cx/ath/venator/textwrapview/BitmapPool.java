@@ -0,0 +1,120 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+
+/**
+ * Pool of mutable bitmaps which are not displayed anymore, bucketed by
+ * width, height and config, so that new thumbnails can be drawn into an
+ * existing pixel buffer instead of allocating one. Bitmaps which don't fit in
+ * the byte budget are recycled.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class BitmapPool {
+	private final HashMap<Long, ArrayList<Bitmap>> buckets = new HashMap<Long, ArrayList<Bitmap>>();
+	// insertion order, the oldest bitmaps are dropped first
+	private final LinkedList<Bitmap> order = new LinkedList<Bitmap>();
+	private int maxSize;
+	private int size;
+	private int hitCount, missCount;
+
+	public BitmapPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	private static Long getKey(int width, int height, Bitmap.Config config) {
+		return Long.valueOf(((long) width << 32) | ((long) height << 8) | (config != null ? config.ordinal() + 1 : 0));
+	}
+
+	static int getByteCount(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	/**
+	 * Returns a mutable bitmap with the given size and config, with undefined
+	 * content, or null if there is none.
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		ArrayList<Bitmap> bucket = buckets.get(getKey(width, height, config));
+		if (bucket == null || bucket.isEmpty()) {
+			missCount++;
+			return null;
+		}
+		Bitmap bitmap = bucket.remove(bucket.size() - 1);
+		order.remove(bitmap);
+		size -= getByteCount(bitmap);
+		hitCount++;
+		return bitmap;
+	}
+
+	/**
+	 * Hands bitmap over to the pool, which may recycle it. The caller must not
+	 * use it anymore.
+	 */
+	public synchronized void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled())
+			return;
+		if (!bitmap.isMutable() || getByteCount(bitmap) > maxSize) {
+			bitmap.recycle();
+			return;
+		}
+		Long key = getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+		ArrayList<Bitmap> bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new ArrayList<Bitmap>();
+			buckets.put(key, bucket);
+		}
+		bucket.add(bitmap);
+		order.addLast(bitmap);
+		size += getByteCount(bitmap);
+		trimToSize(maxSize);
+	}
+
+	public synchronized void trimToSize(int maxSize) {
+		while (size > maxSize && !order.isEmpty()) {
+			Bitmap eldest = order.removeFirst();
+			buckets.get(getKey(eldest.getWidth(), eldest.getHeight(), eldest.getConfig())).remove(eldest);
+			size -= getByteCount(eldest);
+			eldest.recycle();
+		}
+	}
+
+	public synchronized void clear() {
+		trimToSize(-1);
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized int maxSize() {
+		return maxSize;
+	}
+
+	public synchronized int hitCount() {
+		return hitCount;
+	}
+
+	public synchronized int missCount() {
+		return missCount;
+	}
+}
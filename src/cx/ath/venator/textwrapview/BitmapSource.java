@@ -0,0 +1,188 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+/**
+ * Something a bitmap can be decoded from: a resource, a file or a stream.
+ * Decoding first reads the image bounds only, then decodes it subsampled to
+ * the smallest power of two which still covers the requested size, so that
+ * thumbnails never need the full resolution image in memory.
+ * 
+ * Sources are compared by what they point to, so they can be used as keys.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public abstract class BitmapSource {
+	/**
+	 * Opens a new stream on the same data at every call. Decoding a stream
+	 * source reads it twice: once for the bounds, once for the pixels.
+	 */
+	public interface StreamOpener {
+		public InputStream open() throws IOException;
+	}
+
+	public static BitmapSource fromResource(final Resources res, final int resId) {
+		return new BitmapSource(Integer.valueOf(resId)) {
+			@Override
+			protected Bitmap decode(BitmapFactory.Options opts) {
+				return BitmapFactory.decodeResource(res, resId, opts);
+			}
+		};
+	}
+
+	public static BitmapSource fromFile(final String path) {
+		return new BitmapSource(path) {
+			@Override
+			protected Bitmap decode(BitmapFactory.Options opts) {
+				return BitmapFactory.decodeFile(path, opts);
+			}
+		};
+	}
+
+	/**
+	 * A source reading from the streams returned by opener. Sources with the
+	 * same key are assumed to hold the same image.
+	 */
+	public static BitmapSource fromStream(Object key, final StreamOpener opener) {
+		return new BitmapSource(key) {
+			@Override
+			protected Bitmap decode(BitmapFactory.Options opts) throws IOException {
+				InputStream in = opener.open();
+				try {
+					return BitmapFactory.decodeStream(in, null, opts);
+				} finally {
+					in.close();
+				}
+			}
+		};
+	}
+
+	// BitmapFactory.Options.inBitmap and inMutable, API 11
+	private static final Field IN_BITMAP, IN_MUTABLE;
+
+	static {
+		Field inBitmap = null, inMutable = null;
+		if (Build.VERSION.SDK_INT >= 11) {
+			try {
+				inBitmap = BitmapFactory.Options.class.getField("inBitmap");
+				inMutable = BitmapFactory.Options.class.getField("inMutable");
+			} catch (NoSuchFieldException e) {
+				inBitmap = null;
+			}
+		}
+		IN_BITMAP = inBitmap;
+		IN_MUTABLE = inMutable;
+	}
+
+	private final Object key;
+
+	protected BitmapSource(Object key) {
+		if (key == null)
+			throw new NullPointerException("key == null");
+		this.key = key;
+	}
+
+	/**
+	 * Decodes with the given options, which may ask for the bounds only.
+	 */
+	protected abstract Bitmap decode(BitmapFactory.Options opts) throws IOException;
+
+	/**
+	 * Decodes the image at the lowest resolution which is still at least
+	 * reqWidth x reqHeight after a center-crop. Returns null if the image
+	 * can't be decoded.
+	 */
+	public Bitmap decode(int reqWidth, int reqHeight) throws IOException {
+		return decode(reqWidth, reqHeight, new BitmapFactory.Options(), null);
+	}
+
+	/**
+	 * Same as decode(reqWidth, reqHeight), reusing the pixels of a bitmap from
+	 * pool when the platform supports it and one of the decoded size is
+	 * available.
+	 */
+	Bitmap decode(int reqWidth, int reqHeight, BitmapFactory.Options opts, BitmapPool pool) throws IOException {
+		opts.inJustDecodeBounds = true;
+		decode(opts);
+		if (opts.outWidth <= 0 || opts.outHeight <= 0)
+			return null;
+
+		opts.inJustDecodeBounds = false;
+		opts.inSampleSize = getSampleSize(opts.outWidth, opts.outHeight, reqWidth, reqHeight);
+		// before API 19, inBitmap only works for same size, non subsampled decodes
+		if (pool != null && opts.inSampleSize == 1 && IN_BITMAP != null) {
+			Bitmap reuse = pool.get(opts.outWidth, opts.outHeight, Bitmap.Config.ARGB_8888);
+			if (reuse != null) {
+				try {
+					setOption(IN_BITMAP, opts, reuse);
+					setOption(IN_MUTABLE, opts, Boolean.TRUE);
+					return decode(opts);
+				} catch (IllegalArgumentException e) {
+					// the pooled bitmap can't hold this image
+					pool.put(reuse);
+					setOption(IN_BITMAP, opts, null);
+				}
+			}
+		}
+		return decode(opts);
+	}
+
+	private static void setOption(Field field, BitmapFactory.Options opts, Object value) {
+		try {
+			field.set(opts, value);
+		} catch (IllegalAccessException e) {
+			// the fields are public
+			throw new RuntimeException(e);
+		}
+	}
+
+	static int getSampleSize(int width, int height, int reqWidth, int reqHeight) {
+		int sampleSize = 1;
+		if (reqWidth <= 0 || reqHeight <= 0)
+			return sampleSize;
+		while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight)
+			sampleSize *= 2;
+		return sampleSize;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (o == null || o.getClass() != getClass())
+			return false;
+		return key.equals(((BitmapSource) o).key);
+	}
+
+	@Override
+	public int hashCode() {
+		return key.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "BitmapSource[" + key + "]";
+	}
+}
@@ -0,0 +1,68 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+/**
+ * The point where a TextBreaker ran out of lines: the text and the offset
+ * of the first character it left out. A breaker handed a cursor lays out
+ * the rest of the text with its own width profile, so that a text can flow
+ * through several regions, e.g. a header and a few columns, reading each
+ * character once.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class BreakCursor {
+	private final CharSequence text;
+	private final int offset;
+
+	public BreakCursor(CharSequence text, int offset) {
+		if (text == null)
+			throw new NullPointerException("text == null");
+		if (offset < 0)
+			throw new IndexOutOfBoundsException("offset < 0");
+		this.text = text;
+		this.offset = offset;
+	}
+
+	public CharSequence getText() {
+		return text;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof BreakCursor))
+			return false;
+		BreakCursor c = (BreakCursor) o;
+		return text == c.text && offset == c.offset;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(text) * 31 + offset;
+	}
+
+	@Override
+	public String toString() {
+		return "BreakCursor[" + offset + "]";
+	}
+}
@@ -0,0 +1,101 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.lang.reflect.Method;
+
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.os.Build;
+
+/**
+ * Display list of the content of a view: the drawing commands are recorded
+ * once into a Picture and replayed by the next draws, until the content
+ * changes. Unlike the drawing cache it doesn't allocate a bitmap of the size
+ * of the view.
+ * 
+ * Hardware accelerated canvases keep a display list of each view already
+ * (and can't replay Pictures before API 23), so they are drawn to directly.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+final class DisplayListCache {
+	// Canvas.isHardwareAccelerated(), API 11
+	private static final Method IS_HARDWARE_ACCELERATED;
+
+	static {
+		Method method = null;
+		if (Build.VERSION.SDK_INT >= 11) {
+			try {
+				method = Canvas.class.getMethod("isHardwareAccelerated");
+			} catch (NoSuchMethodException e) {
+				method = null;
+			}
+		}
+		IS_HARDWARE_ACCELERATED = method;
+	}
+
+	private final Picture picture = new Picture();
+	private boolean valid;
+	private int width, height, version;
+
+	/**
+	 * Discards the recording, e.g. because a color changed.
+	 */
+	void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * Whether canvas should replay recordings rather than being drawn to.
+	 */
+	static boolean canReplay(Canvas canvas) {
+		if (IS_HARDWARE_ACCELERATED == null)
+			return true;
+		try {
+			return !((Boolean) IS_HARDWARE_ACCELERATED.invoke(canvas)).booleanValue();
+		} catch (Exception e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Whether the recording is still valid for a view of the given size
+	 * whose layout has the given version.
+	 */
+	boolean isValid(int width, int height, int version) {
+		return valid && width == this.width && height == this.height && version == this.version;
+	}
+
+	/**
+	 * Returns the canvas to draw the content on, then call endRecording().
+	 */
+	Canvas beginRecording(int width, int height, int version) {
+		this.width = width;
+		this.height = height;
+		this.version = version;
+		return picture.beginRecording(width, height);
+	}
+
+	void endRecording() {
+		picture.endRecording();
+		valid = true;
+	}
+
+	void draw(Canvas canvas) {
+		canvas.drawPicture(picture);
+	}
+}
@@ -0,0 +1,318 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lays out a long text block by block, on demand, for views which only show
+ * a window of it at a time. A block is a run of whole paragraphs of a few
+ * thousand chars. Blocks are indexed lazily, as far as the lines asked for,
+ * by their start and end offsets; the lines of each block are estimated from
+ * the length of its paragraphs until it is broken, and the line counts are
+ * kept in a Fenwick tree so that the block at a given line and the first line
+ * of a block are found in logarithmic time. The lines after the indexed
+ * blocks are estimated from the remaining length. Only the recently used
+ * blocks keep their lines.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+final class DocumentLayout {
+	// paragraphs are added to a block until it is at least this long
+	private static final int BLOCK_CHARS = 4096;
+	// lines kept by the broken blocks
+	private static final int MAX_CACHED_LINES = 4096;
+	private static final String SAMPLE = "etaoin shrdlu cmfwyp vbgkjq xz";
+
+	private final TextBreaker breaker = new TextBreaker();
+	private CharSequence text;
+	// start and end of each indexed block, the end excludes the last '\n'
+	private int[] starts = new int[16], ends = new int[16];
+	// line count of each block, estimated or exact
+	private int[] lines = new int[16];
+	private int blockCount;
+	// Fenwick tree over lines
+	private int[] tree = new int[17];
+	private int indexedLines;
+	// offset the indexing resumes from, -1 once the whole text is indexed
+	private int indexEnd;
+	private final BitSet exact = new BitSet();
+	private int exactCount;
+
+	private int maxWidth = -1;
+	private StyleKey style;
+	private float charWidth;
+
+	private final LinkedHashMap<Integer, TextLayout> layouts = new LinkedHashMap<Integer, TextLayout>(16, 0.75f, true);
+	private int cachedLines;
+
+	DocumentLayout() {
+		breaker.setMaxWidthLines(0, -1);
+	}
+
+	/**
+	 * Sets the text to lay out, without reading it.
+	 */
+	void setText(CharSequence text) {
+		this.text = text;
+		reset();
+	}
+
+	CharSequence getText() {
+		return text;
+	}
+
+	/**
+	 * Sets the width lines are broken at and the style they are measured
+	 * with. Changing either forgets every broken block.
+	 */
+	void setWidth(int maxWidth, WidthMeasurer wm) {
+		if (maxWidth == this.maxWidth && wm.getStyleKey().equals(style))
+			return;
+		this.maxWidth = maxWidth;
+		this.style = wm.getStyleKey();
+		breaker.setMaxWidthLines(maxWidth, -1);
+		charWidth = wm.measureText(SAMPLE, 0, SAMPLE.length()) / SAMPLE.length();
+		reset();
+	}
+
+	void setBreakStrategy(int breakStrategy) {
+		if (breakStrategy != breaker.getBreakStrategy()) {
+			breaker.setBreakStrategy(breakStrategy);
+			reset();
+		}
+	}
+
+	void setHyphenator(Hyphenator hyphenator) {
+		if (hyphenator != breaker.getHyphenator()) {
+			breaker.setHyphenator(hyphenator);
+			reset();
+		}
+	}
+
+	/**
+	 * Forgets every indexed and broken block.
+	 */
+	private void reset() {
+		layouts.clear();
+		cachedLines = 0;
+		exact.clear();
+		exactCount = 0;
+		blockCount = 0;
+		indexedLines = 0;
+		indexEnd = text != null ? 0 : -1;
+	}
+
+	/**
+	 * Indexes the next block, returns false if the whole text is indexed.
+	 */
+	private boolean indexBlock() {
+		if (indexEnd < 0)
+			return false;
+		int start = -1, end = -1, estimate = 0;
+		int p = indexEnd;
+		while (end - start < BLOCK_CHARS) {
+			int newline = indexOfNewline(p);
+			int paragraphEnd = newline >= 0 ? newline : text.length();
+			// paragraphs are separated by one or more '\n', as for TextBreaker
+			if (paragraphEnd > p) {
+				if (start < 0)
+					start = p;
+				end = paragraphEnd;
+				estimate += estimateLines(paragraphEnd - p);
+			}
+			if (newline < 0) {
+				p = -1;
+				break;
+			}
+			p = newline + 1;
+		}
+		indexEnd = p;
+		if (start < 0)
+			return false;
+
+		boolean grown = blockCount == starts.length;
+		if (grown) {
+			int capacity = blockCount * 2;
+			int[] newStarts = new int[capacity], newEnds = new int[capacity], newLines = new int[capacity];
+			System.arraycopy(starts, 0, newStarts, 0, blockCount);
+			System.arraycopy(ends, 0, newEnds, 0, blockCount);
+			System.arraycopy(lines, 0, newLines, 0, blockCount);
+			starts = newStarts;
+			ends = newEnds;
+			lines = newLines;
+		}
+		starts[blockCount] = start;
+		ends[blockCount] = end;
+		lines[blockCount] = estimate;
+		blockCount++;
+		indexedLines += estimate;
+		if (grown) {
+			rebuildTree();
+		} else {
+			// the new node sums the blocks (blockCount - lowbit(blockCount), blockCount]
+			int sum = estimate;
+			for (int i = blockCount - 1, stop = blockCount - (blockCount & -blockCount); i > stop; i -= i & -i)
+				sum += tree[i];
+			tree[blockCount] = sum;
+		}
+		return true;
+	}
+
+	private void rebuildTree() {
+		tree = new int[starts.length + 1];
+		for (int i = 1; i <= blockCount; i++)
+			tree[i] = lines[i - 1];
+		// linear time Fenwick tree construction
+		for (int i = 1; i <= blockCount; i++) {
+			int parent = i + (i & -i);
+			if (parent <= blockCount)
+				tree[parent] += tree[i];
+		}
+	}
+
+	private int indexOfNewline(int from) {
+		if (text instanceof MappedText)
+			return ((MappedText) text).indexOfNewline(from);
+		for (int i = from, len = text.length(); i < len; i++) {
+			if (text.charAt(i) == '\n')
+				return i;
+		}
+		return -1;
+	}
+
+	private int estimateLines(int length) {
+		if (maxWidth <= 0 || charWidth <= 0)
+			return 1;
+		return Math.max(1, (int) Math.ceil(length * charWidth / maxWidth));
+	}
+
+	/**
+	 * Indexes blocks until line belongs to one of them or the whole text is
+	 * indexed.
+	 */
+	private void indexUpTo(int line) {
+		while (indexedLines <= line && indexBlock()) {
+		}
+	}
+
+	/**
+	 * Whether the text has the given block, indexing it up to that block.
+	 */
+	boolean hasBlock(int block) {
+		while (blockCount <= block && indexBlock()) {
+		}
+		return block < blockCount;
+	}
+
+	int getBlockStart(int block) {
+		return starts[block];
+	}
+
+	/**
+	 * The number of lines of the text, exact once every block has been
+	 * broken, see isExact().
+	 */
+	int getLineCount() {
+		if (indexEnd < 0)
+			return indexedLines;
+		if (blockCount == 0) {
+			indexBlock();
+			if (indexEnd < 0)
+				return indexedLines;
+		}
+		// the rest of the text is assumed to be like the indexed part
+		int remaining = text instanceof MappedText ? ((MappedText) text).getRemainingBytes(indexEnd) : text.length() - indexEnd;
+		int indexedChars = ends[blockCount - 1] - starts[0];
+		return indexedLines + (int) ((long) remaining * indexedLines / Math.max(1, indexedChars));
+	}
+
+	boolean isExact() {
+		return indexEnd < 0 && exactCount == blockCount;
+	}
+
+	/**
+	 * Index of the first line of block.
+	 */
+	int getFirstLine(int block) {
+		int sum = 0;
+		for (int i = block; i > 0; i -= i & -i)
+			sum += tree[i];
+		return sum;
+	}
+
+	/**
+	 * Index of the block line belongs to, the last one if line is past the
+	 * end, -1 if the text is empty. Indexes the text up to line.
+	 */
+	int getBlockForLine(int line) {
+		indexUpTo(line);
+		int pos = 0;
+		int remaining = line;
+		for (int step = Integer.highestOneBit(Math.max(1, blockCount)); step > 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= blockCount && tree[next] <= remaining) {
+				pos = next;
+				remaining -= tree[next];
+			}
+		}
+		return Math.min(pos, blockCount - 1);
+	}
+
+	/**
+	 * Returns the lines of block, breaking it if needed, with offsets relative
+	 * to getBlockStart(block). Breaking it replaces its estimated line count
+	 * with the exact one.
+	 */
+	TextLayout getLayout(int block, WidthMeasurer wm) {
+		Integer key = Integer.valueOf(block);
+		TextLayout layout = layouts.get(key);
+		if (layout != null)
+			return layout;
+
+		breaker.breakText(text.subSequence(starts[block], ends[block]), wm);
+		layout = breaker.getLayout();
+		layouts.put(key, layout);
+		cachedLines += layout.getLineCount();
+		trimLayouts();
+
+		if (!exact.get(block)) {
+			exact.set(block);
+			exactCount++;
+			int delta = layout.getLineCount() - lines[block];
+			if (delta != 0) {
+				lines[block] += delta;
+				for (int i = block + 1; i <= blockCount; i += i & -i)
+					tree[i] += delta;
+				indexedLines += delta;
+			}
+		}
+		return layout;
+	}
+
+	private void trimLayouts() {
+		Iterator<Map.Entry<Integer, TextLayout>> it = layouts.entrySet().iterator();
+		// the most recent block stays, however long
+		while (cachedLines > MAX_CACHED_LINES && layouts.size() > 1) {
+			cachedLines -= it.next().getValue().getLineCount();
+			it.remove();
+		}
+	}
+}
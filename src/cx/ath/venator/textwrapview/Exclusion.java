@@ -0,0 +1,105 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+/**
+ * An area text flows around: an image outline, placed in the text area, on
+ * its left or right side. Lines beside a left exclusion start after it,
+ * lines beside a right one end before it, margin pixels away.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class Exclusion {
+	public static final int LEFT = 0;
+	public static final int RIGHT = 1;
+
+	private final SpanProfile profile;
+	private final int x, y;
+	private final int side;
+	private final int margin;
+
+	/**
+	 * An exclusion shaped as profile, with its top left corner at x, y of the
+	 * text area.
+	 */
+	public Exclusion(SpanProfile profile, int x, int y, int side, int margin) {
+		if (side != LEFT && side != RIGHT)
+			throw new IllegalArgumentException("Unknown side " + side);
+		this.profile = profile;
+		this.x = x;
+		this.y = y;
+		this.side = side;
+		this.margin = margin;
+	}
+
+	public SpanProfile getProfile() {
+		return profile;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getSide() {
+		return side;
+	}
+
+	public int getMargin() {
+		return margin;
+	}
+
+	/**
+	 * Where the text of a line spanning the rows [top, bottom) can start, 0
+	 * if this is not a left exclusion or doesn't reach the line.
+	 */
+	int getTextLeft(int top, int bottom) {
+		if (side != LEFT)
+			return 0;
+		int right = profile.getRight(top - y, bottom - y);
+		return right != Integer.MIN_VALUE ? x + right + margin : 0;
+	}
+
+	/**
+	 * Where the text of a line spanning the rows [top, bottom) must end,
+	 * width if this is not a right exclusion or doesn't reach the line.
+	 */
+	int getTextRight(int top, int bottom, int width) {
+		if (side != RIGHT)
+			return width;
+		int left = profile.getLeft(top - y, bottom - y);
+		return left != Integer.MAX_VALUE ? x + left - margin : width;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof Exclusion))
+			return false;
+		Exclusion e = (Exclusion) o;
+		return profile.equals(e.profile) && x == e.x && y == e.y && side == e.side && margin == e.margin;
+	}
+
+	@Override
+	public int hashCode() {
+		return (((profile.hashCode() * 31 + x) * 31 + y) * 31 + side) * 31 + margin;
+	}
+}
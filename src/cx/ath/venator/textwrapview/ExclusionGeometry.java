@@ -0,0 +1,107 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import java.util.Arrays;
+
+/**
+ * Lines of a given height stacked from the top of a text area, narrowed by
+ * the exclusions they pass beside. The span of each line is computed when
+ * it is asked for, from the rows of the exclusions it overlaps.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class ExclusionGeometry implements LineGeometry {
+	private final int width;
+	private final float top, lineHeight;
+	private final int lineCount;
+	private final Exclusion[] exclusions;
+
+	/**
+	 * Up to lineCount lines (-1 for no limit) of lineHeight pixels, the first
+	 * one starting at top, in a text area width pixels wide.
+	 */
+	public ExclusionGeometry(int width, float top, float lineHeight, int lineCount, Exclusion... exclusions) {
+		this.width = width;
+		this.top = top;
+		this.lineHeight = lineHeight;
+		this.lineCount = lineCount;
+		this.exclusions = exclusions.clone();
+	}
+
+	/**
+	 * Whether this geometry has the given parameters, so that views can keep
+	 * it across measures instead of creating an equal one.
+	 */
+	public boolean matches(int width, float top, float lineHeight, int lineCount, Exclusion... exclusions) {
+		return this.width == width && this.top == top && this.lineHeight == lineHeight && this.lineCount == lineCount
+				&& Arrays.equals(this.exclusions, exclusions);
+	}
+
+	@Override
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	@Override
+	public int getWidth(int line) {
+		int lineTop = getLineTop(line), lineBottom = getLineBottom(line);
+		int left = 0, right = width;
+		for (Exclusion e : exclusions) {
+			left = Math.max(left, e.getTextLeft(lineTop, lineBottom));
+			right = Math.min(right, e.getTextRight(lineTop, lineBottom, width));
+		}
+		// exclusions on both sides may leave no room at all
+		return Math.max(0, right - left);
+	}
+
+	@Override
+	public int getOffset(int line) {
+		int lineTop = getLineTop(line), lineBottom = getLineBottom(line);
+		int left = 0;
+		for (Exclusion e : exclusions)
+			left = Math.max(left, e.getTextLeft(lineTop, lineBottom));
+		return left;
+	}
+
+	private int getLineTop(int line) {
+		return (int) (top + line * lineHeight);
+	}
+
+	private int getLineBottom(int line) {
+		return (int) Math.ceil(top + (line + 1) * lineHeight);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof ExclusionGeometry))
+			return false;
+		ExclusionGeometry g = (ExclusionGeometry) o;
+		return matches(g.width, g.top, g.lineHeight, g.lineCount, g.exclusions);
+	}
+
+	@Override
+	public int hashCode() {
+		int h = width;
+		h = 31 * h + Float.floatToIntBits(top);
+		h = 31 * h + Float.floatToIntBits(lineHeight);
+		h = 31 * h + lineCount;
+		return 31 * h + Arrays.hashCode(exclusions);
+	}
+}
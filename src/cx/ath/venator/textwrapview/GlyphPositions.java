@@ -0,0 +1,141 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Build;
+
+/**
+ * Position of every character of the lines of a TextBreaker, computed once
+ * per break from the advances of the measurer, so that the lines can be
+ * drawn with Canvas.drawPosText() without measuring or shaping them again
+ * at each draw. Lines with characters which need shaping (see
+ * PaintWidthMeasurer.needsShaping()) are left to drawText().
+ * 
+ * The positions are recomputed when the breaker breaks its text again,
+ * which includes every paint change affecting the measurements.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+final class GlyphPositions {
+	private int version = -1;
+	private int lineCount;
+	// characters of the lines, line i is [lineOffsets[i], lineOffsets[i + 1])
+	private char[] chars = new char[0];
+	private int[] lineOffsets = new int[1];
+	// x of each character of a line relative to its origin, then x, y of
+	// each character for the origin in lineX, lineY
+	private float[][] offsets = new float[0][];
+	private float[][] positions = new float[0][];
+	private float[] lineX = new float[0], lineY = new float[0];
+	private boolean[] shaped = new boolean[0];
+	private float[] advances = new float[16];
+
+	/**
+	 * drawPosText() is not supported by hardware acceleration before API 16.
+	 */
+	static boolean canDraw(Canvas canvas) {
+		return Build.VERSION.SDK_INT >= 16 || DisplayListCache.canReplay(canvas);
+	}
+
+	/**
+	 * Recomputes the positions if breaker has broken its text since the last
+	 * call. wm must be the measurer the text was broken with.
+	 */
+	void update(TextBreaker breaker, WidthMeasurer wm) {
+		if (breaker.getVersion() == version)
+			return;
+		version = breaker.getVersion();
+		lineCount = breaker.getLineCount();
+		CharSequence text = breaker.getText();
+
+		int total = 0;
+		for (int i = 0; i < lineCount; i++)
+			total += breaker.getLineEnd(i) - breaker.getLineStart(i);
+		if (chars.length < total)
+			chars = new char[total];
+		if (lineOffsets.length < lineCount + 1)
+			lineOffsets = new int[lineCount + 1];
+		if (positions.length < lineCount) {
+			float[][] o = new float[lineCount][];
+			float[][] p = new float[lineCount][];
+			System.arraycopy(offsets, 0, o, 0, offsets.length);
+			System.arraycopy(positions, 0, p, 0, positions.length);
+			offsets = o;
+			positions = p;
+			lineX = new float[lineCount];
+			lineY = new float[lineCount];
+			shaped = new boolean[lineCount];
+		}
+
+		int offset = 0;
+		for (int i = 0; i < lineCount; i++) {
+			int start = breaker.getLineStart(i), n = breaker.getLineEnd(i) - start;
+			lineOffsets[i] = offset;
+			boolean needsShaping = false;
+			for (int j = 0; j < n; j++) {
+				char c = text.charAt(start + j);
+				chars[offset + j] = c;
+				needsShaping |= PaintWidthMeasurer.needsShaping(c);
+			}
+			shaped[i] = needsShaping;
+			if (!needsShaping) {
+				if (advances.length < n)
+					advances = new float[Math.max(n, advances.length * 2)];
+				wm.getTextWidths(text, start, start + n, advances);
+				if (offsets[i] == null || offsets[i].length < n) {
+					offsets[i] = new float[Math.max(n, 8)];
+					positions[i] = new float[Math.max(2 * n, 16)];
+				}
+				float[] xs = offsets[i];
+				float x = 0;
+				for (int j = 0; j < n; j++) {
+					xs[j] = x;
+					x += advances[j];
+				}
+				// positions are set by the first drawLine()
+				lineX[i] = Float.NaN;
+			}
+			offset += n;
+		}
+		lineOffsets[lineCount] = offset;
+	}
+
+	/**
+	 * Draws the characters of line with their baseline origin at x, y.
+	 * Returns false if the line must be drawn with drawText() instead.
+	 */
+	boolean drawLine(Canvas canvas, int line, float x, float y, Paint paint) {
+		if (line >= lineCount || shaped[line])
+			return false;
+		int offset = lineOffsets[line], n = lineOffsets[line + 1] - offset;
+		if (n == 0)
+			return true;
+		float[] pos = positions[line];
+		if (x != lineX[line] || y != lineY[line]) {
+			float[] xs = offsets[line];
+			for (int j = 0; j < n; j++) {
+				pos[2 * j] = x + xs[j];
+				pos[2 * j + 1] = y;
+			}
+			lineX[line] = x;
+			lineY[line] = y;
+		}
+		canvas.drawPosText(chars, offset, n, pos, paint);
+		return true;
+	}
+}
@@ -0,0 +1,188 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles TeX hyphenation patterns (e.g. the hyph-*.pat.txt files of
+ * hyph-utf8: whitespace separated patterns such as ".ach4" or "a1b", '%'
+ * starts a comment) into the format read by Hyphenator.load(). Meant to run
+ * at build time, so that apps ship the compiled file as a raw resource:
+ * 
+ * java -cp textwrapview.jar cx.ath.venator.textwrapview.HyphenationCompiler hyph-en-us.pat.txt hyph_en_us.hyb 2 3
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class HyphenationCompiler {
+	private static final class Node {
+		final TreeMap<Character, Node> children = new TreeMap<Character, Node>();
+		byte[] values;
+	}
+
+	private final Node root = new Node();
+
+	/**
+	 * Adds a pattern, letters interleaved with the digits which go between
+	 * them.
+	 */
+	public void addPattern(String pattern) {
+		StringBuilder letters = new StringBuilder();
+		byte[] digits = new byte[pattern.length() + 1];
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c >= '0' && c <= '9')
+				digits[letters.length()] = (byte) (c - '0');
+			else
+				letters.append(Character.toLowerCase(c));
+		}
+		Node node = root;
+		for (int i = 0; i < letters.length(); i++) {
+			Character c = Character.valueOf(letters.charAt(i));
+			Node child = node.children.get(c);
+			if (child == null) {
+				child = new Node();
+				node.children.put(c, child);
+			}
+			node = child;
+		}
+		node.values = new byte[letters.length() + 1];
+		System.arraycopy(digits, 0, node.values, 0, node.values.length);
+	}
+
+	public void addPatterns(Reader in) throws IOException {
+		BufferedReader reader = new BufferedReader(in);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			int comment = line.indexOf('%');
+			if (comment >= 0)
+				line = line.substring(0, comment);
+			for (String pattern : line.trim().split("\\s+")) {
+				if (pattern.length() != 0)
+					addPattern(pattern);
+			}
+		}
+	}
+
+	/**
+	 * Writes the trie of the patterns added so far.
+	 */
+	public void write(OutputStream out, int minPrefix, int minSuffix) throws IOException {
+		// number the nodes breadth first
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		ArrayList<Character> labels = new ArrayList<Character>();
+		nodes.add(root);
+		labels.add(Character.valueOf('\0'));
+		ArrayList<Integer> firsts = new ArrayList<Integer>();
+		for (int i = 0; i < nodes.size(); i++) {
+			firsts.add(Integer.valueOf(nodes.size()));
+			for (Map.Entry<Character, Node> e : nodes.get(i).children.entrySet()) {
+				labels.add(e.getKey());
+				nodes.add(e.getValue());
+			}
+		}
+		int[] firstChild = new int[nodes.size() + 1];
+		for (int i = 0; i < nodes.size(); i++)
+			firstChild[i] = firsts.get(i).intValue();
+		firstChild[nodes.size()] = nodes.size();
+
+		// patterns with the same digits share them
+		HashMap<String, Integer> offsets = new HashMap<String, Integer>();
+		StringBuilder values = new StringBuilder();
+		int[] valueOffsets = new int[nodes.size()];
+		for (int i = 0; i < nodes.size(); i++) {
+			byte[] v = nodes.get(i).values;
+			if (v == null) {
+				valueOffsets[i] = -1;
+				continue;
+			}
+			StringBuilder key = new StringBuilder();
+			for (byte b : v)
+				key.append((char) ('0' + b));
+			Integer offset = offsets.get(key.toString());
+			if (offset == null) {
+				offset = Integer.valueOf(values.length());
+				offsets.put(key.toString(), offset);
+				values.append(key);
+			}
+			valueOffsets[i] = offset.intValue();
+		}
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(Hyphenator.MAGIC);
+		data.writeByte(minPrefix);
+		data.writeByte(minSuffix);
+		data.writeInt(nodes.size());
+		for (Character c : labels)
+			data.writeChar(c.charValue());
+		for (int f : firstChild)
+			data.writeInt(f);
+		for (int o : valueOffsets)
+			data.writeInt(o);
+		data.writeInt(values.length());
+		for (int i = 0; i < values.length(); i++)
+			data.writeByte(values.charAt(i) - '0');
+		data.flush();
+	}
+
+	/**
+	 * Builds a Hyphenator from the patterns added so far, without going
+	 * through a file.
+	 */
+	public Hyphenator toHyphenator(int minPrefix, int minSuffix) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(out, minPrefix, minSuffix);
+		return Hyphenator.load(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	/**
+	 * Usage: HyphenationCompiler patterns.txt output.hyb [minPrefix minSuffix]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2 && args.length != 4) {
+			System.err.println("Usage: HyphenationCompiler patterns.txt output.hyb [minPrefix minSuffix]");
+			System.exit(1);
+		}
+		int minPrefix = args.length == 4 ? Integer.parseInt(args[2]) : 2;
+		int minSuffix = args.length == 4 ? Integer.parseInt(args[3]) : 3;
+		HyphenationCompiler compiler = new HyphenationCompiler();
+		Reader in = new InputStreamReader(new FileInputStream(args[0]), "UTF-8");
+		try {
+			compiler.addPatterns(in);
+		} finally {
+			in.close();
+		}
+		OutputStream out = new FileOutputStream(args[1]);
+		try {
+			compiler.write(out, minPrefix, minSuffix);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Finds hyphenation points with Liang's algorithm (the one used by TeX).
+ * Patterns are not parsed at runtime: HyphenationCompiler turns a pattern
+ * file into a trie made of a few primitive arrays, which load() reads as is.
+ * 
+ * The trie nodes are numbered breadth first, so the children of a node are
+ * contiguous and sorted by letter: node i has the children
+ * [firstChild[i], firstChild[i + 1]), the letter leading to node i is
+ * labels[i] and the digits of the pattern ending at node i start at
+ * values[valueOffsets[i]] (-1 if no pattern ends there).
+ * 
+ * Lookups allocate nothing, except for caching the word on a cache miss.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class Hyphenator {
+	static final int MAGIC = 0x48594831; // "HYH1"
+	// longer words are not hyphenated, so that points fit a long
+	static final int MAX_WORD_LENGTH = 62;
+	private static final int CACHE_SIZE = 256;
+
+	private final char[] labels;
+	private final int[] firstChild;
+	private final int[] valueOffsets;
+	private final byte[] values;
+	private final int minPrefix, minSuffix;
+	// computed on first use, 0 until then
+	private volatile long fingerprint;
+
+	// scratch buffers of hyphenate(), guarded by this
+	private final char[] word = new char[MAX_WORD_LENGTH + 2];
+	private final byte[] points = new byte[MAX_WORD_LENGTH + 3];
+	// direct mapped cache of the hyphenation points of recent words
+	private final String[] cacheWords = new String[CACHE_SIZE];
+	private final long[] cachePoints = new long[CACHE_SIZE];
+
+	Hyphenator(char[] labels, int[] firstChild, int[] valueOffsets, byte[] values, int minPrefix, int minSuffix) {
+		this.labels = labels;
+		this.firstChild = firstChild;
+		this.valueOffsets = valueOffsets;
+		this.values = values;
+		this.minPrefix = minPrefix;
+		this.minSuffix = minSuffix;
+	}
+
+	/**
+	 * Reads patterns compiled by HyphenationCompiler, e.g. from a raw
+	 * resource. Doesn't close in.
+	 */
+	public static Hyphenator load(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a compiled hyphenation pattern file");
+		int minPrefix = data.readUnsignedByte();
+		int minSuffix = data.readUnsignedByte();
+		int nodeCount = data.readInt();
+		char[] labels = new char[nodeCount];
+		for (int i = 0; i < nodeCount; i++)
+			labels[i] = data.readChar();
+		int[] firstChild = new int[nodeCount + 1];
+		for (int i = 0; i <= nodeCount; i++)
+			firstChild[i] = data.readInt();
+		int[] valueOffsets = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++)
+			valueOffsets[i] = data.readInt();
+		byte[] values = new byte[data.readInt()];
+		data.readFully(values);
+		return new Hyphenator(labels, firstChild, valueOffsets, values, minPrefix, minSuffix);
+	}
+
+	/**
+	 * Minimum number of letters before a hyphen.
+	 */
+	public int getMinPrefix() {
+		return minPrefix;
+	}
+
+	/**
+	 * Minimum number of letters after a hyphen.
+	 */
+	public int getMinSuffix() {
+		return minSuffix;
+	}
+
+	/**
+	 * Returns the hyphenation points of the word text[start, end) as a bit
+	 * mask: bit i is set if the word can be broken before text[start + i].
+	 * Leading and trailing punctuation is ignored; words containing other
+	 * characters than letters are not hyphenated.
+	 */
+	public synchronized long hyphenate(CharSequence text, int start, int end) {
+		int wordStart = start;
+		while (start < end && !Character.isLetter(text.charAt(start)))
+			start++;
+		while (end > start && !Character.isLetter(text.charAt(end - 1)))
+			end--;
+		int len = end - start;
+		// the points, shifted past the leading punctuation, must fit a long
+		if (len < minPrefix + minSuffix || len > MAX_WORD_LENGTH || end - wordStart > 63)
+			return 0;
+
+		int hash = 0;
+		for (int i = start; i < end; i++)
+			hash = 31 * hash + text.charAt(i);
+		int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+		String cached = cacheWords[slot];
+		if (cached != null && cached.length() == len && regionMatches(cached, text, start))
+			return cachePoints[slot] << (start - wordStart);
+
+		long result = computePoints(text, start, len);
+		cacheWords[slot] = text.subSequence(start, end).toString();
+		cachePoints[slot] = result;
+		return result << (start - wordStart);
+	}
+
+	private static boolean regionMatches(String s, CharSequence text, int start) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) != text.charAt(start + i))
+				return false;
+		}
+		return true;
+	}
+
+	private long computePoints(CharSequence text, int start, int len) {
+		// the word between dots, which match the word boundaries in patterns
+		word[0] = '.';
+		for (int i = 0; i < len; i++) {
+			char c = text.charAt(start + i);
+			if (!Character.isLetter(c))
+				return 0;
+			word[i + 1] = Character.toLowerCase(c);
+		}
+		word[len + 1] = '.';
+		int n = len + 2;
+		for (int i = 0; i <= n; i++)
+			points[i] = 0;
+
+		// points[i] is the highest value between word[i - 1] and word[i] of all the matching patterns
+		for (int i = 0; i < n; i++) {
+			int node = 0;
+			for (int j = i; j < n; j++) {
+				node = findChild(node, word[j]);
+				if (node < 0)
+					break;
+				int offset = valueOffsets[node];
+				if (offset >= 0) {
+					for (int k = 0; k <= j - i + 1; k++) {
+						byte v = values[offset + k];
+						if (v > points[i + k])
+							points[i + k] = v;
+					}
+				}
+			}
+		}
+
+		// odd values allow a break; character p of the word follows points[p + 1]
+		long result = 0;
+		for (int p = minPrefix; p <= len - minSuffix; p++) {
+			if ((points[p + 1] & 1) != 0)
+				result |= 1L << p;
+		}
+		return result;
+	}
+
+	private int findChild(int node, char c) {
+		int lo = firstChild[node], hi = firstChild[node + 1] - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char label = labels[mid];
+			if (label < c)
+				lo = mid + 1;
+			else if (label > c)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * A hash of the patterns, the same across processes, so that layouts
+	 * stored on disk are only reused with the same hyphenation.
+	 */
+	long getFingerprint() {
+		long h = fingerprint;
+		if (h == 0) {
+			h = LayoutSnapshotCache.mix(0xcbf29ce484222325L, minPrefix * 31 + minSuffix);
+			for (char c : labels)
+				h = LayoutSnapshotCache.mix(h, c);
+			for (int i : firstChild)
+				h = LayoutSnapshotCache.mix(h, i);
+			for (int i : valueOffsets)
+				h = LayoutSnapshotCache.mix(h, i);
+			for (byte b : values)
+				h = LayoutSnapshotCache.mix(h, b);
+			fingerprint = h;
+		}
+		return h;
+	}
+
+	/**
+	 * Approximate heap footprint of the patterns.
+	 */
+	public int getSizeInBytes() {
+		return labels.length * 10 + values.length + 64;
+	}
+}
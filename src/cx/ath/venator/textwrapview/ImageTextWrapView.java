@@ -15,14 +15,17 @@
 
 package cx.ath.venator.textwrapview;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Rect;
 import android.graphics.Typeface;
@@ -35,7 +38,8 @@ import android.view.View;
  * image, a title at its right and a text flowing below it. The image size can
  * be expressed in term of title+text lines or as an exact dimension. The bitmap
  * is center-cropped by the BitmapCropper class. The text length is expressed in
- * term of lines and it is ellipsized.
+ * term of lines and it is ellipsized. Images set from resources, files or
+ * streams are decoded in background, subsampled to the image size.
  * 
  * The basis for this widget is taken from the android custom widget doc:
  * http://
@@ -45,31 +49,55 @@ import android.view.View;
  * @author Alessio Bianchi (venator85)
  */
 public class ImageTextWrapView extends View {
+	private static final int TITLE_MAX_LINES = 100;
+
 	private int titleTextPadding = 5;
 	private int imagePadding = 5;
 
 	private TextPaint titlePaint;
 	private TextPaint textPaint;
+	private WidthMeasurer titleMeasurer;
+	private WidthMeasurer textMeasurer;
 
-	private String title;
+	private CharSequence title;
 	private TextBreaker titleBreaker;
 
-	private String text;
+	private CharSequence text;
 	private int textMaxLines = -1;
 	private TextBreaker textBreaker;
 
-	private Bitmap bitmap, croppedBitmap;
+	private PrecomputedLayout precomputedTitle, precomputedText;
+	private LayoutStats layoutStats;
+	private final DisplayListCache displayList = new DisplayListCache();
+	// null unless enabled
+	private GlyphPositions titlePositions, textPositions;
+
+	private Bitmap bitmap;
+	private BitmapSource bitmapSource;
+	private BitmapLoader bitmapLoader = BitmapLoader.getDefault();
+	private BitmapLoader.Request bitmapRequest;
+	// cache key of bitmap, if it is a thumbnail acquired from the bitmap loader cache
+	private ThumbnailCache.Key thumbnailKey;
+	// center-crop region of bitmap, valid for cropBitmap at cropWidth x cropHeight
+	private final Rect cropSrc = new Rect();
+	private final Rect cropDst = new Rect();
+	private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private Bitmap cropBitmap;
+	private int cropWidth, cropHeight;
 	private int imgWidthInPixel = -1;
 	private int imgHeightInPixel = -1;
 	private int imgSizeInLines = -1;
-	private int tabbedTextLines = 0;
-	private int tabbedTitleLines;
+	private int imageSide = Exclusion.LEFT;
+	private boolean wrapToImageShape;
+	// the image first, then the areas set with setExclusions()
+	private Exclusion[] exclusions = new Exclusion[1];
+	private ExclusionGeometry titleGeometry, textGeometry;
 
 	private Object tag;
 	private int imgSizeMode;
 
 	private void clearCache() {
-		setDrawingCacheEnabled(false);
+		displayList.invalidate();
 	}
 
 	public ImageTextWrapView(Context context) {
@@ -80,6 +108,8 @@ public class ImageTextWrapView extends View {
 	private void init() {
 		titleBreaker = new TextBreaker();
 		textBreaker = new TextBreaker();
+		titleBreaker.setLayoutCache(LayoutCache.getDefault());
+		textBreaker.setLayoutCache(LayoutCache.getDefault());
 
 		titlePaint = new TextPaint();
 		titlePaint.setAntiAlias(true);
@@ -92,6 +122,9 @@ public class ImageTextWrapView extends View {
 		textPaint.setTextSize(14);
 		textPaint.setColor(0xff000000);
 		textPaint.setTextAlign(Align.LEFT);
+
+		titleMeasurer = new PaintWidthMeasurer(titlePaint);
+		textMeasurer = new PaintWidthMeasurer(textPaint);
 	}
 
 	public ImageTextWrapView(Context context, AttributeSet attrs) {
@@ -167,6 +200,48 @@ public class ImageTextWrapView extends View {
 		invalidate();
 	}
 
+	/**
+	 * Places the image on the Exclusion.LEFT (default) or Exclusion.RIGHT
+	 * side of the view.
+	 */
+	public void setImageSide(int side) {
+		if (side != Exclusion.LEFT && side != Exclusion.RIGHT)
+			throw new IllegalArgumentException("Unknown side " + side);
+		imageSide = side;
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	public int getImageSide() {
+		return imageSide;
+	}
+
+	/**
+	 * Flows title and text around the opaque pixels of the image, instead of
+	 * its bounds. The outline is computed once per bitmap and size.
+	 */
+	public void setWrapToImageShape(boolean wrap) {
+		wrapToImageShape = wrap;
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Other areas title and text flow around besides the image, e.g. more
+	 * images drawn over the view, in coordinates of the content area.
+	 */
+	public void setExclusions(Exclusion... exclusions) {
+		Exclusion[] all = new Exclusion[1 + exclusions.length];
+		System.arraycopy(exclusions, 0, all, 1, exclusions.length);
+		all[0] = this.exclusions[0];
+		this.exclusions = all;
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
 	public void setImgSizeInLines(int lines) {
 		this.imgSizeInLines = lines;
 		this.imgHeightInPixel = -1;
@@ -176,8 +251,9 @@ public class ImageTextWrapView extends View {
 		invalidate();
 	}
 
-	public void setText(String text) {
+	public void setText(CharSequence text) {
 		this.text = text;
+		this.precomputedText = null;
 		clearCache();
 		requestLayout();
 		invalidate();
@@ -203,8 +279,85 @@ public class ImageTextWrapView extends View {
 		invalidate();
 	}
 
-	public void setTitle(String title) {
+	/**
+	 * Adopts the title and text lines stored in snapshotCache by a previous
+	 * session instead of breaking them again, and stores the new ones. Null
+	 * disables it. Snapshots not read ahead by the cache are read while
+	 * measuring, a disk read for StrictMode.
+	 */
+	public void setLayoutSnapshotCache(LayoutSnapshotCache snapshotCache) {
+		titleBreaker.setSnapshotCache(snapshotCache);
+		textBreaker.setSnapshotCache(snapshotCache);
+	}
+
+	/**
+	 * Enables hyphenation of title and text with the patterns of hyphenator,
+	 * null disables it. Mostly useful for the narrow lines next to the image.
+	 */
+	public void setHyphenator(Hyphenator hyphenator) {
+		titleBreaker.setHyphenator(hyphenator);
+		textBreaker.setHyphenator(hyphenator);
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Disables the ellipsis when the text doesn't fit, for views followed by
+	 * another one which shows the rest of the text, see getContinuation().
+	 */
+	public void setEllipsize(boolean ellipsize) {
+		textBreaker.setEllipsize(ellipsize);
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Sets the string drawn where the text is truncated, e.g. "\u2026".
+	 */
+	public void setEllipsis(String ellipsis) {
+		textBreaker.setEllipsis(ellipsis);
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Sets one of the TextBreaker.ELLIPSIZE_* constants for the text, e.g.
+	 * ELLIPSIZE_MIDDLE to keep both ends of a file path.
+	 */
+	public void setEllipsizeMode(int ellipsizeMode) {
+		textBreaker.setEllipsizeMode(ellipsizeMode);
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Where the text this view couldn't fit starts, to be passed to
+	 * TextWrapView.setTextFrom(BreakCursor) of the next view, or null if it fit.
+	 * Valid once this view has been measured.
+	 */
+	public BreakCursor getContinuation() {
+		return textBreaker.getContinuation();
+	}
+
+	/**
+	 * Draws the lines from the character positions computed once per layout,
+	 * instead of measuring them at every draw. Fonts with kerning or
+	 * ligatures, which drawText() would apply, may look slightly different.
+	 */
+	public void setUseGlyphPositions(boolean enabled) {
+		titlePositions = enabled ? new GlyphPositions() : null;
+		textPositions = enabled ? new GlyphPositions() : null;
+		clearCache();
+		invalidate();
+	}
+
+	public void setTitle(CharSequence title) {
 		this.title = title;
+		this.precomputedTitle = null;
 		clearCache();
 		requestLayout();
 		invalidate();
@@ -257,6 +410,44 @@ public class ImageTextWrapView extends View {
 		invalidate();
 	}
 
+	/**
+	 * Sets title and text of a layout computed by a LayoutTemplate of this
+	 * view. The next measure pass adopts the precomputed lines if style, width
+	 * and image size still match, otherwise it breaks them as usual.
+	 */
+	public void setPrecomputedLayout(Precomputed layout) {
+		this.title = layout.getTitle().getText();
+		this.text = layout.getText().getText();
+		this.precomputedTitle = layout.getTitle();
+		this.precomputedText = layout.getText();
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Returns a snapshot of the attributes the layout of this view depends on,
+	 * which can be used to break titles and texts for it on a background
+	 * thread.
+	 */
+	public LayoutTemplate getLayoutTemplate() {
+		return new LayoutTemplate(this);
+	}
+
+	/**
+	 * The metrics of this view recorded by LayoutMetrics, null if it hasn't
+	 * recorded any.
+	 */
+	public LayoutStats getLayoutStats() {
+		return layoutStats;
+	}
+
+	private LayoutStats getOrCreateLayoutStats() {
+		if (layoutStats == null)
+			layoutStats = new LayoutStats();
+		return layoutStats;
+	}
+
 	@Override
 	public Object getTag() {
 		return tag;
@@ -267,25 +458,152 @@ public class ImageTextWrapView extends View {
 		this.tag = tag;
 	}
 
+	/**
+	 * Decodes the given resource in background, see setBitmap(BitmapSource).
+	 */
 	public void setBitmap(int imgId) {
-		this.bitmap = BitmapFactory.decodeResource(getResources(), imgId);
+		setBitmap(BitmapSource.fromResource(getResources(), imgId));
+	}
+
+	/**
+	 * Decodes source in background with the bitmap loader of this view, once
+	 * the image size is known, subsampled to that size. Any previous pending
+	 * decode is cancelled.
+	 */
+	public void setBitmap(BitmapSource source) {
+		cancelBitmapRequest();
+		releaseThumbnail();
+		this.bitmap = null;
+		this.cropBitmap = null;
+		this.bitmapSource = source;
 		clearCache();
 		requestLayout();
 		invalidate();
 	}
 
 	public void setBitmap(Bitmap bitmap) {
+		cancelBitmapRequest();
+		releaseThumbnail();
+		this.bitmapSource = null;
 		this.bitmap = bitmap;
+		this.cropBitmap = null;
 		clearCache();
 		requestLayout();
 		invalidate();
 	}
 
+	public void setBitmapLoader(BitmapLoader bitmapLoader) {
+		cancelBitmapRequest();
+		if (thumbnailKey != null) {
+			// the thumbnail belongs to the cache of the old loader
+			releaseThumbnail();
+			bitmap = null;
+			cropBitmap = null;
+		}
+		this.bitmapLoader = bitmapLoader;
+		requestLayout();
+	}
+
+	private void cancelBitmapRequest() {
+		if (bitmapRequest != null) {
+			bitmapRequest.cancel();
+			bitmapRequest = null;
+		}
+	}
+
+	/**
+	 * Starts loading the thumbnail of bitmapSource for the current image size,
+	 * unless it is displayed or requested already.
+	 */
+	private void loadBitmap() {
+		int w = imgWidthInPixel, h = imgHeightInPixel;
+		if (bitmapSource == null || w <= 0 || h <= 0)
+			return;
+		if (thumbnailKey != null && thumbnailKey.getWidth() == w && thumbnailKey.getHeight() == h)
+			return;
+		if (bitmapRequest != null && bitmapRequest.getRequestedWidth() == w && bitmapRequest.getRequestedHeight() == h)
+			return;
+
+		cancelBitmapRequest();
+		ThumbnailCache.Key key = new ThumbnailCache.Key(bitmapSource, w, h);
+		Bitmap cached = bitmapLoader.getCache().acquire(key);
+		if (cached != null)
+			showThumbnail(key, cached);
+		else
+			bitmapRequest = bitmapLoader.load(bitmapSource, w, h, bitmapCallback);
+	}
+
+	private final BitmapLoader.Callback bitmapCallback = new BitmapLoader.Callback() {
+		@Override
+		public void onBitmapLoaded(BitmapLoader.Request request, Bitmap result) {
+			if (request != bitmapRequest) {
+				if (result != null)
+					bitmapLoader.getCache().release(request.getKey(), result);
+				return;
+			}
+			bitmapRequest = null;
+			if (result != null && request.getDecodeNanos() > 0 && LayoutMetrics.sample())
+				LayoutMetrics.recordCrop(ImageTextWrapView.this, getOrCreateLayoutStats(), request.getDecodeNanos(),
+						request.getBitmapAllocations());
+			if (result != null)
+				showThumbnail(request.getKey(), result);
+		}
+	};
+
+	/**
+	 * Displays a thumbnail acquired from the cache of the bitmap loader.
+	 */
+	private void showThumbnail(ThumbnailCache.Key key, Bitmap thumbnail) {
+		releaseThumbnail();
+		thumbnailKey = key;
+		bitmap = thumbnail;
+		cropBitmap = null;
+		clearCache();
+		if (wrapToImageShape)
+			requestLayout();
+		invalidate();
+	}
+
+	private void releaseThumbnail() {
+		if (thumbnailKey != null) {
+			bitmapLoader.getCache().release(thumbnailKey, bitmap);
+			thumbnailKey = null;
+		}
+	}
+
+	@Override
+	public void setPadding(int left, int top, int right, int bottom) {
+		super.setPadding(left, top, right, bottom);
+		clearCache();
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		// the thumbnail released on detach, usually still in the cache
+		loadBitmap();
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		// acquired again on attach or on the next measure if the view comes back, so that
+		// the cache can recycle the thumbnails of detached views
+		cancelBitmapRequest();
+		if (thumbnailKey != null) {
+			releaseThumbnail();
+			bitmap = null;
+			cropBitmap = null;
+			clearCache();
+		}
+	}
+
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
 		int w = measureWidth(widthMeasureSpec);
 		int h = measureHeight(heightMeasureSpec);
 		setMeasuredDimension(w, h);
+		loadBitmap();
 	}
 
 	private int measureWidth(int measureSpec) {
@@ -324,11 +642,11 @@ public class ImageTextWrapView extends View {
 			result = specSize;
 		} else {
 			// The lines should already be broken up. Calculate our max desired height for our current mode.
-			int numTitleLines = titleBreaker.getLines().size();
+			int numTitleLines = titleBreaker.getLineCount();
 			float titleLineHeight = -textPaint.ascent() + titlePaint.descent();
 			int titleBlockHeight = (int) (numTitleLines * titleLineHeight);
 
-			int numTextLines = textBreaker.getLines().size();
+			int numTextLines = textBreaker.getLineCount();
 			float textLineHeight = -titlePaint.ascent() + textPaint.descent();
 			int textBlockHeight = (int) (numTextLines * textLineHeight);
 
@@ -369,59 +687,145 @@ public class ImageTextWrapView extends View {
 		}
 
 		int fullWidth = availableWidth - getPaddingLeft() - getPaddingRight();
-		int tabbedWidth = (int) (fullWidth - (imgWidthInPixel + imagePadding));
-
-		int imageHeightInTitleLines = (int) Math.ceil(imgHeightInPixel / titleLineHeight);
-
-		int titleLines = 100;
-		int[] titleMaxWidths = new int[titleLines];
-		tabbedTitleLines = Math.min(titleLines, imageHeightInTitleLines);
-		Arrays.fill(titleMaxWidths, 0, tabbedTitleLines, tabbedWidth);
-		Arrays.fill(titleMaxWidths, tabbedTitleLines, titleLines, fullWidth);
-		titleBreaker.setMaxWidths(titleMaxWidths);
-		titleBreaker.breakText(title, titlePaint);
-
-		int textLinesToTab = 0;
-		float realTitleLinesHeight = titleBreaker.getLines().size() * titleLineHeight;
-		if ((realTitleLinesHeight + titleTextPadding) < imgHeightInPixel) {
-			float d = imgHeightInPixel - (realTitleLinesHeight + titleTextPadding);
-			textLinesToTab = (int) Math.ceil(d / textLineHeight);
+		updateImageExclusion(fullWidth);
+
+		boolean sampled = LayoutMetrics.sample();
+		if (sampled)
+			LayoutMetrics.beginSection("ImageTextWrapView#breakText");
+
+		titleGeometry = getGeometry(titleGeometry, fullWidth, 0, titleLineHeight, TITLE_MAX_LINES, exclusions);
+		titleBreaker.setLineGeometry(titleGeometry);
+		if (sampled)
+			LayoutMetrics.breakText(this, getOrCreateLayoutStats(), titleBreaker, title, titleMeasurer, precomputedTitle);
+		else
+			titleBreaker.breakText(title, titleMeasurer, precomputedTitle);
+
+		float textTop = titleBreaker.getLineCount() * titleLineHeight + titleTextPadding;
+		textGeometry = getGeometry(textGeometry, fullWidth, textTop, textLineHeight, textMaxLines, exclusions);
+		textBreaker.setLineGeometry(textGeometry);
+		if (sampled)
+			LayoutMetrics.breakText(this, getOrCreateLayoutStats(), textBreaker, text, textMeasurer, precomputedText);
+		else
+			textBreaker.breakText(text, textMeasurer, precomputedText);
+
+		if (sampled)
+			LayoutMetrics.endSection();
+
+		return availableWidth;
+	}
+
+	/**
+	 * Sets exclusions[0] to the image, at its current size and side of a
+	 * content area fullWidth pixels wide. Keeps the current one if unchanged.
+	 */
+	private void updateImageExclusion(int fullWidth) {
+		int w = imgWidthInPixel, h = imgHeightInPixel;
+		Exclusion image = exclusions[0];
+		SpanProfile profile;
+		if (wrapToImageShape && bitmap != null && w > 0 && h > 0) {
+			updateCrop();
+			profile = SpanProfile.fromBitmap(bitmap, cropSrc, w, h);
+		} else if (image != null && image.getProfile().isRectangle(w, h)) {
+			profile = image.getProfile();
+		} else {
+			profile = SpanProfile.rectangle(w, h);
 		}
+		int x = imageSide == Exclusion.LEFT ? 0 : fullWidth - w;
+		if (image == null || image.getProfile() != profile || image.getX() != x || image.getSide() != imageSide
+				|| image.getMargin() != imagePadding)
+			exclusions[0] = new Exclusion(profile, x, 0, imageSide, imagePadding);
+	}
 
-		int[] textMaxWidths = new int[textMaxLines];
-		tabbedTextLines = Math.min(textLinesToTab, textMaxLines);
-		Arrays.fill(textMaxWidths, 0, tabbedTextLines, tabbedWidth);
-		Arrays.fill(textMaxWidths, tabbedTextLines, textMaxLines, fullWidth);
-		textBreaker.setMaxWidths(textMaxWidths);
-		textBreaker.breakText(text, textPaint);
+	/**
+	 * Returns reuse if it has the given parameters, a new geometry otherwise.
+	 */
+	private static ExclusionGeometry getGeometry(ExclusionGeometry reuse, int fullWidth, float top, float lineHeight,
+			int lineCount, Exclusion[] exclusions) {
+		if (reuse != null && reuse.matches(fullWidth, top, lineHeight, lineCount, exclusions))
+			return reuse;
+		return new ExclusionGeometry(fullWidth, top, lineHeight, lineCount, exclusions);
+	}
 
-		return availableWidth;
+	private void updateCrop() {
+		if (bitmap != cropBitmap || imgWidthInPixel != cropWidth || imgHeightInPixel != cropHeight) {
+			// the crop only depends on the bitmap and image size, scaling happens while drawing
+			BitmapCropper.getCenterCropRect(bitmap.getWidth(), bitmap.getHeight(), imgWidthInPixel, imgHeightInPixel, cropSrc);
+			cropBitmap = bitmap;
+			cropWidth = imgWidthInPixel;
+			cropHeight = imgHeightInPixel;
+		}
+	}
+
+	private static void drawLine(Canvas canvas, TextBreaker breaker, GlyphPositions positions, int line, float x, float y,
+			TextPaint paint) {
+		CharSequence text = breaker.getText();
+		int end = breaker.getLineEnd(line);
+		boolean ellipsis = breaker.hasEllipsis(line);
+		// truncated at the start or middle, the ellipsis replaces text inside the line
+		if (ellipsis && breaker.getEllipsisStart(line) < end)
+			canvas.drawText(text, breaker.getLineStart(line), breaker.getEllipsisStart(line), x, y, paint);
+		else if (positions == null || !positions.drawLine(canvas, line, x, y, paint))
+			canvas.drawText(text, breaker.getLineStart(line), end, x, y, paint);
+		if (ellipsis) {
+			float ellipsisX = x + breaker.getEllipsisX(line);
+			canvas.drawText(breaker.getEllipsis(), ellipsisX, y, paint);
+			if (breaker.getEllipsisEnd(line) < end)
+				canvas.drawText(text, breaker.getEllipsisEnd(line), end, ellipsisX + breaker.getEllipsisWidth(), y, paint);
+		} else if (breaker.hasHyphen(line))
+			canvas.drawText(TextBreaker.HYPHEN, x + breaker.getLineWidth(line), y, paint);
 	}
 
 	@Override
 	protected void onDraw(Canvas canvas) {
 		super.onDraw(canvas);
-		
-		List<String> titleLines = titleBreaker.getLines();
-		List<String> textLines = textBreaker.getLines();
+		boolean sampled = LayoutMetrics.sample();
+		long start = 0;
+		if (sampled) {
+			LayoutMetrics.beginSection("ImageTextWrapView#onDraw");
+			start = System.nanoTime();
+		}
+
+		if (DisplayListCache.canReplay(canvas)) {
+			// setters invalidate the recording, relayouts change the versions of the breakers
+			int version = titleBreaker.getVersion() + textBreaker.getVersion();
+			if (!displayList.isValid(getWidth(), getHeight(), version)) {
+				drawContent(displayList.beginRecording(getWidth(), getHeight(), version));
+				displayList.endRecording();
+			}
+			displayList.draw(canvas);
+		} else {
+			drawContent(canvas);
+		}
+
+		if (sampled) {
+			LayoutMetrics.recordDraw(this, getOrCreateLayoutStats(), System.nanoTime() - start);
+			LayoutMetrics.endSection();
+		}
+	}
 
-		Rect dst = new Rect(getPaddingLeft(), getPaddingTop(), getPaddingLeft() + imgWidthInPixel, getPaddingTop() + imgHeightInPixel);
-		croppedBitmap = BitmapCropper.centerCropBitmap(bitmap, imgWidthInPixel, imgHeightInPixel);
-		canvas.drawBitmap(croppedBitmap, null, dst, null);
+	private void drawContent(Canvas canvas) {
+		if (bitmap != null && imgWidthInPixel > 0 && imgHeightInPixel > 0) {
+			updateCrop();
+			int left = imageSide == Exclusion.LEFT ? getPaddingLeft() : getWidth() - getPaddingRight() - imgWidthInPixel;
+			cropDst.set(left, getPaddingTop(), left + imgWidthInPixel, getPaddingTop() + imgHeightInPixel);
+			canvas.drawBitmap(bitmap, cropSrc, cropDst, bitmapPaint);
+		}
 
 		float x, y;
 		float textLineHeight = -textPaint.ascent() + textPaint.descent();
 		float titleLineHeight = -titlePaint.ascent() + titlePaint.descent();
 
+		boolean positioned = titlePositions != null && GlyphPositions.canDraw(canvas);
+		if (positioned) {
+			titlePositions.update(titleBreaker, titleMeasurer);
+			textPositions.update(textBreaker, textMeasurer);
+		}
+
 		// Draw title
 		y = getPaddingTop() + (-titlePaint.ascent());
-		for (int i = 0; i < titleLines.size(); i++) {
-			x = getPaddingLeft();
-			if (i < tabbedTitleLines) {
-				x += imgWidthInPixel + imagePadding;
-			}
-			String s = titleLines.get(i);
-			canvas.drawText(s, x, y, titlePaint);
+		for (int i = 0; i < titleBreaker.getLineCount(); i++) {
+			x = getPaddingLeft() + titleGeometry.getOffset(i);
+			drawLine(canvas, titleBreaker, positioned ? titlePositions : null, i, x, y, titlePaint);
 			y += titleLineHeight;
 			if (y > canvas.getHeight()) {
 				break;
@@ -430,20 +834,119 @@ public class ImageTextWrapView extends View {
 
 		// Draw text
 		y += titleTextPadding;
-		for (int i = 0; i < textLines.size(); i++) {
-			x = getPaddingLeft();
-			if (i < tabbedTextLines) {
-				x += imgWidthInPixel + imagePadding;
-			}
-			String s = textLines.get(i);
-			canvas.drawText(s, x, y, textPaint);
+		for (int i = 0; i < textBreaker.getLineCount(); i++) {
+			x = getPaddingLeft() + textGeometry.getOffset(i);
+			drawLine(canvas, textBreaker, positioned ? textPositions : null, i, x, y, textPaint);
 			y += textLineHeight;
 			if (y > canvas.getHeight()) {
 				break;
 			}
 		}
-		
-		//enable drawing cache, onDraw() won't be called again until invalidate() is invoked
-		setDrawingCacheEnabled(true);
+	}
+
+	/**
+	 * Title and text layouts computed by a LayoutTemplate.
+	 */
+	public static final class Precomputed {
+		private final PrecomputedLayout title, text;
+
+		Precomputed(PrecomputedLayout title, PrecomputedLayout text) {
+			this.title = title;
+			this.text = text;
+		}
+
+		public PrecomputedLayout getTitle() {
+			return title;
+		}
+
+		public PrecomputedLayout getText() {
+			return text;
+		}
+	}
+
+	/**
+	 * Immutable snapshot of the paints, paddings and image size of an
+	 * ImageTextWrapView. Unlike the view, it can be used from any thread to
+	 * compute layouts, e.g. while binding the rows of a list.
+	 */
+	public static final class LayoutTemplate {
+		// snapshots of the paints of the view, safe to measure with from any thread
+		private final WidthMeasurer titleMeasurer, textMeasurer;
+		private final float titleLineHeight, textLineHeight;
+		private final int imgSizeMode, imgWidth, imgHeight, imgSizeInLines;
+		private final int horizontalPadding, imagePadding, titleTextPadding;
+		private final int textMaxLines;
+		private final int imageSide;
+		private final Exclusion[] exclusions;
+		private final Hyphenator hyphenator;
+		private final String ellipsis;
+		private final int ellipsizeMode;
+
+		LayoutTemplate(ImageTextWrapView v) {
+			titleMeasurer = PaintWidthMeasurer.snapshot(v.titlePaint);
+			textMeasurer = PaintWidthMeasurer.snapshot(v.textPaint);
+			titleLineHeight = -v.titlePaint.ascent() + v.titlePaint.descent();
+			textLineHeight = -v.textPaint.ascent() + v.textPaint.descent();
+			imgSizeMode = v.imgSizeMode;
+			imgWidth = v.imgWidthInPixel;
+			imgHeight = v.imgHeightInPixel;
+			imgSizeInLines = v.imgSizeInLines;
+			horizontalPadding = v.getPaddingLeft() + v.getPaddingRight();
+			imagePadding = v.imagePadding;
+			titleTextPadding = v.titleTextPadding;
+			textMaxLines = v.textMaxLines;
+			imageSide = v.imageSide;
+			exclusions = v.exclusions.clone();
+			hyphenator = v.textBreaker.getHyphenator();
+			ellipsis = v.textBreaker.getEllipsis();
+			ellipsizeMode = v.textBreaker.getEllipsizeMode();
+		}
+
+		/**
+		 * Breaks title and text for a view which will be measured with the
+		 * given width.
+		 */
+		public Precomputed compute(CharSequence title, CharSequence text, int width) {
+			int imgW = imgWidth, imgH = imgHeight;
+			if (imgSizeMode == 0 && (imgH == -1 || imgW == -1)) {
+				imgH = (int) (titleLineHeight * imgSizeInLines);
+				imgW = imgH;
+			}
+			int fullWidth = width - horizontalPadding;
+			// the shape of the image is unknown until it is loaded, the view breaks again if it matters
+			Exclusion[] ex = exclusions.clone();
+			ex[0] = new Exclusion(SpanProfile.rectangle(imgW, imgH), imageSide == Exclusion.LEFT ? 0 : fullWidth - imgW, 0,
+					imageSide, imagePadding);
+
+			LayoutEngine engine = LayoutEngine.getDefault();
+			PrecomputedLayout titleLayout = engine.precompute(new LayoutRequest.Builder(title, titleMeasurer)
+					.setLineGeometry(new ExclusionGeometry(fullWidth, 0, titleLineHeight, TITLE_MAX_LINES, ex))
+					.setHyphenator(hyphenator).build());
+
+			if (Thread.currentThread().isInterrupted())
+				throw new CancellationException();
+
+			float textTop = titleLayout.getLayout().getLineCount() * titleLineHeight + titleTextPadding;
+			PrecomputedLayout textLayout = engine.precompute(new LayoutRequest.Builder(text, textMeasurer)
+					.setLineGeometry(new ExclusionGeometry(fullWidth, textTop, textLineHeight, textMaxLines, ex))
+					.setHyphenator(hyphenator).setEllipsis(ellipsis).setEllipsizeMode(ellipsizeMode).build());
+
+			return new Precomputed(titleLayout, textLayout);
+		}
+
+		/**
+		 * Runs compute() on executor. Cancel the returned future when the
+		 * target view is recycled before the result is needed.
+		 */
+		public Future<Precomputed> submit(final CharSequence title, final CharSequence text, final int width, Executor executor) {
+			FutureTask<Precomputed> task = new FutureTask<Precomputed>(new Callable<Precomputed>() {
+				@Override
+				public Precomputed call() {
+					return compute(title, text, width);
+				}
+			});
+			executor.execute(task);
+			return task;
+		}
 	}
 }
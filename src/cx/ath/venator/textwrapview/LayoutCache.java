@@ -0,0 +1,281 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide LRU cache of TextLayouts, keyed by text, style and line width
+ * profile (maxWidth/maxLines, maxWidths or a LineGeometry). Its size is an approximate
+ * memory budget in bytes, which accounts for the layouts and the texts they
+ * retain. The method names follow android.util.LruCache, which is not
+ * available on every platform version we support.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class LayoutCache {
+	private static final int DEFAULT_MAX_SIZE = 512 * 1024;
+	private static final int MAX_ENTRY_FRACTION = 8;
+	private static LayoutCache defaultCache;
+
+	private final LinkedHashMap<Key, TextLayout> map = new LinkedHashMap<Key, TextLayout>(16, 0.75f, true);
+	private int maxSize;
+	private int size;
+	private int hitCount, missCount, putCount, evictionCount, rejectCount;
+
+	public LayoutCache(int maxSize) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("maxSize <= 0");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * The cache shared by every TextWrapView and ImageTextWrapView.
+	 */
+	public static synchronized LayoutCache getDefault() {
+		if (defaultCache == null)
+			defaultCache = new LayoutCache(DEFAULT_MAX_SIZE);
+		return defaultCache;
+	}
+
+	public synchronized TextLayout get(Key key) {
+		TextLayout layout = map.get(key);
+		if (layout != null)
+			hitCount++;
+		else
+			missCount++;
+		return layout;
+	}
+
+	/**
+	 * Stores layout under an immutable copy of key. Layouts bigger than
+	 * 1/MAX_ENTRY_FRACTION of the cache, e.g. of a whole chat log, are not
+	 * stored, so that they don't evict every other entry.
+	 */
+	public synchronized void put(Key key, TextLayout layout) {
+		int entrySize = sizeOf(key, layout);
+		if (entrySize > maxSize / MAX_ENTRY_FRACTION) {
+			rejectCount++;
+			return;
+		}
+		Key copy = key.copy();
+		putCount++;
+		size += entrySize;
+		// the text of the layout may be changed in place by whoever broke it
+		TextLayout previous = map.put(copy, layout.withText(copy.text));
+		if (previous != null)
+			size -= sizeOf(copy, previous);
+		trimToSize(maxSize);
+	}
+
+	public synchronized void trimToSize(int maxSize) {
+		Iterator<Map.Entry<Key, TextLayout>> it = map.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Map.Entry<Key, TextLayout> eldest = it.next();
+			size -= sizeOf(eldest.getKey(), eldest.getValue());
+			it.remove();
+			evictionCount++;
+		}
+	}
+
+	public synchronized void evictAll() {
+		trimToSize(-1);
+	}
+
+	public synchronized void resize(int maxSize) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("maxSize <= 0");
+		this.maxSize = maxSize;
+		trimToSize(maxSize);
+	}
+
+	private static int sizeOf(Key key, TextLayout layout) {
+		int chars = key.text instanceof MappedText ? 0 : key.text.length();
+		return 48 + 2 * chars + (key.maxWidths != null ? 4 * key.maxWidths.length : 0) + layout.getSizeInBytes();
+	}
+
+	/**
+	 * Approximate size of the cached entries, in bytes.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized int maxSize() {
+		return maxSize;
+	}
+
+	public synchronized int hitCount() {
+		return hitCount;
+	}
+
+	public synchronized int missCount() {
+		return missCount;
+	}
+
+	public synchronized int putCount() {
+		return putCount;
+	}
+
+	public synchronized int evictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Number of layouts which were too big to be stored.
+	 */
+	public synchronized int rejectCount() {
+		return rejectCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		int accesses = hitCount + missCount;
+		int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+		return String.format("LayoutCache[size=%d,maxSize=%d,hits=%d,misses=%d,evictions=%d,rejects=%d,hitRate=%d%%]", size,
+				maxSize, hitCount, missCount, evictionCount, rejectCount, hitPercent);
+	}
+
+	/**
+	 * Cache key. A TextBreaker keeps a single mutable instance to probe the
+	 * cache without allocating; put() stores a copy.
+	 */
+	public static final class Key {
+		private CharSequence text;
+		private StyleKey style;
+		private int maxWidth, maxLines;
+		private int[] maxWidths;
+		private LineGeometry geometry;
+		private int breakStrategy;
+		private Hyphenator hyphenator;
+		private String ellipsis;
+		private int ellipsizeMode;
+		private int hash;
+
+		public Key set(CharSequence text, StyleKey style, int maxWidth, int maxLines, int[] maxWidths) {
+			return set(text, style, maxWidth, maxLines, maxWidths, TextBreaker.BREAK_STRATEGY_GREEDY, null);
+		}
+
+		public Key set(CharSequence text, StyleKey style, int maxWidth, int maxLines, int[] maxWidths, int breakStrategy,
+				Hyphenator hyphenator) {
+			return set(text, style, maxWidth, maxLines, maxWidths, null, breakStrategy, hyphenator);
+		}
+
+		public Key set(CharSequence text, StyleKey style, int maxWidth, int maxLines, int[] maxWidths, LineGeometry geometry,
+				int breakStrategy, Hyphenator hyphenator) {
+			return set(text, style, maxWidth, maxLines, maxWidths, geometry, breakStrategy, hyphenator, TextBreaker.ELLIPSIS,
+					TextBreaker.ELLIPSIZE_END);
+		}
+
+		public Key set(CharSequence text, StyleKey style, int maxWidth, int maxLines, int[] maxWidths, LineGeometry geometry,
+				int breakStrategy, Hyphenator hyphenator, String ellipsis, int ellipsizeMode) {
+			this.text = text;
+			this.style = style;
+			this.maxWidth = maxWidth;
+			this.maxLines = maxLines;
+			this.maxWidths = maxWidths;
+			this.geometry = geometry;
+			this.breakStrategy = breakStrategy;
+			this.hyphenator = hyphenator;
+			this.ellipsis = ellipsis;
+			this.ellipsizeMode = ellipsizeMode;
+
+			int h = contentHashCode(text);
+			h = 31 * h + style.hashCode();
+			h = 31 * h + maxWidth;
+			h = 31 * h + maxLines;
+			h = 31 * h + Arrays.hashCode(maxWidths);
+			h = 31 * h + (geometry != null ? geometry.hashCode() : 0);
+			h = 31 * h + breakStrategy;
+			h = 31 * h + System.identityHashCode(hyphenator);
+			h = 31 * h + ellipsis.hashCode();
+			h = 31 * h + ellipsizeMode;
+			this.hash = h;
+			return this;
+		}
+
+		CharSequence getText() {
+			return text;
+		}
+
+		Key copy() {
+			Key k = new Key();
+			// a MappedText is immutable and holds no chars on the heap
+			k.text = text instanceof MappedText ? text : text.toString();
+			k.style = style;
+			k.maxWidth = maxWidth;
+			k.maxLines = maxLines;
+			k.maxWidths = maxWidths != null ? maxWidths.clone() : null;
+			// geometries are immutable values
+			k.geometry = geometry;
+			k.breakStrategy = breakStrategy;
+			k.hyphenator = hyphenator;
+			k.ellipsis = ellipsis;
+			k.ellipsizeMode = ellipsizeMode;
+			k.hash = hash;
+			return k;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return hash == k.hash && maxWidth == k.maxWidth && maxLines == k.maxLines && breakStrategy == k.breakStrategy
+					&& hyphenator == k.hyphenator && ellipsizeMode == k.ellipsizeMode && ellipsis.equals(k.ellipsis)
+					&& style.equals(k.style) && Arrays.equals(maxWidths, k.maxWidths)
+					&& (geometry == null ? k.geometry == null : geometry.equals(k.geometry)) && contentEquals(text, k.text);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		/**
+		 * Same as text.toString().hashCode(), without the copy.
+		 */
+		static int contentHashCode(CharSequence text) {
+			// a MappedText is identified by its file, rather than read whole
+			if (text instanceof String || text instanceof MappedText)
+				return text.hashCode();
+			int h = 0;
+			for (int i = 0; i < text.length(); i++)
+				h = 31 * h + text.charAt(i);
+			return h;
+		}
+
+		static boolean contentEquals(CharSequence a, CharSequence b) {
+			if (a instanceof String && b instanceof String)
+				return a.equals(b);
+			if (a instanceof MappedText || b instanceof MappedText)
+				return a.equals(b);
+			int len = a.length();
+			if (len != b.length())
+				return false;
+			for (int i = 0; i < len; i++) {
+				if (a.charAt(i) != b.charAt(i))
+					return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Breaks LayoutRequests into TextLayouts from any number of threads at once.
+ * The engine itself holds no state besides its cache: each thread breaks with
+ * a TextBreaker of its own, whose arrays are reused by its next requests, so
+ * a thread breaking request after request only allocates the results.
+ * 
+ * Results are immutable and can be shared between threads, e.g. handed to
+ * a view with TextBreaker.setLayout().
+ * 
+ * An engine with an executor also breaks single long texts on several
+ * threads: paragraphs don't affect each other's lines when all the lines are
+ * equally wide, so the text is split in chunks of whole paragraphs which are
+ * broken concurrently and joined in order. If the lines are limited, the
+ * paragraph holding the last one is then broken again to fit the ellipsis.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class LayoutEngine {
+	private static final ThreadLocal<TextBreaker> breakers = new ThreadLocal<TextBreaker>() {
+		@Override
+		protected TextBreaker initialValue() {
+			return new TextBreaker();
+		}
+	};
+
+	private static final LayoutEngine defaultEngine = new LayoutEngine(LayoutCache.getDefault());
+
+	private final LayoutCache layoutCache;
+	private final Executor executor;
+	private final int parallelThreshold;
+
+	/**
+	 * An engine looking up and storing its results in layoutCache, null for
+	 * no caching.
+	 */
+	public LayoutEngine(LayoutCache layoutCache) {
+		this(layoutCache, null, 0);
+	}
+
+	/**
+	 * An engine which also breaks the texts of at least 2 * parallelThreshold
+	 * chars on executor, in chunks of about parallelThreshold chars. Texts
+	 * broken in parallel are not cached, they would evict everything else.
+	 */
+	public LayoutEngine(LayoutCache layoutCache, Executor executor, int parallelThreshold) {
+		if (executor != null && parallelThreshold <= 0)
+			throw new IllegalArgumentException("parallelThreshold <= 0");
+		this.layoutCache = layoutCache;
+		this.executor = executor;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * The engine sharing the process-wide LayoutCache with the views.
+	 */
+	public static LayoutEngine getDefault() {
+		return defaultEngine;
+	}
+
+	public LayoutCache getLayoutCache() {
+		return layoutCache;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	public TextLayout breakText(LayoutRequest request) {
+		if (isParallel(request))
+			return breakParallel(request);
+		TextBreaker breaker = getBreaker(request);
+		breaker.breakText(request.getText(), request.getMeasurer());
+		// a cached layout may come from another text with the same content
+		return breaker.getLayout().withText(request.getText());
+	}
+
+	/**
+	 * Same as breakText(), with the result keyed by the request, for a view
+	 * to adopt if its own text, style and width profile are the same.
+	 */
+	public PrecomputedLayout precompute(LayoutRequest request) {
+		// views only adopt layouts starting from the beginning of the text, with an ellipsis
+		if (isParallel(request) && request.getStartOffset() == 0 && request.isEllipsize()) {
+			LayoutCache.Key key = new LayoutCache.Key().set(request.getText(), request.getStyle(), request.getMaxWidth(),
+					request.getMaxLines(), null, null, request.getBreakStrategy(), request.getHyphenator(), request.getEllipsis(),
+					TextBreaker.ELLIPSIZE_END);
+			return new PrecomputedLayout(key, breakParallel(request));
+		}
+		// bound to the text of the request like the keys of the cache, see PrecomputedLayout
+		return getBreaker(request).precompute(request.getText(), request.getMeasurer());
+	}
+
+	private TextBreaker getBreaker(LayoutRequest request) {
+		TextBreaker breaker = breakers.get();
+		breaker.setLayoutCache(layoutCache);
+		request.configure(breaker);
+		return breaker;
+	}
+
+	private boolean isParallel(LayoutRequest request) {
+		// truncating the start or the middle needs the whole text
+		return executor != null && request.hasUniformWidth() && request.getMaxLines() != 0
+				&& request.getEllipsizeMode() == TextBreaker.ELLIPSIZE_END
+				&& request.getText().length() - request.getStartOffset() >= 2 * parallelThreshold;
+	}
+
+	private TextLayout breakParallel(final LayoutRequest request) {
+		final CharSequence text = request.getText();
+		int len = text.length();
+		ArrayList<FutureTask<TextLayout>> tasks = new ArrayList<FutureTask<TextLayout>>();
+		int[] chunkStarts = new int[8];
+		int start = request.getStartOffset();
+		while (start < len) {
+			int end = start + parallelThreshold < len ? indexOfNewline(text, start + parallelThreshold) : -1;
+			if (end < 0)
+				end = len;
+			final int chunkStart = start, chunkEnd = end;
+			tasks.add(new FutureTask<TextLayout>(new Callable<TextLayout>() {
+				@Override
+				public TextLayout call() {
+					return breakChunk(request, text.subSequence(chunkStart, chunkEnd));
+				}
+			}));
+			if (chunkStarts.length < tasks.size())
+				chunkStarts = grow(chunkStarts);
+			chunkStarts[tasks.size() - 1] = chunkStart;
+			start = end + 1;
+		}
+
+		// the first chunk is broken on this thread, so are the ones no worker took yet
+		for (int i = 1; i < tasks.size(); i++)
+			executor.execute(tasks.get(i));
+		for (FutureTask<TextLayout> task : tasks)
+			task.run();
+
+		TextLayout[] chunks = new TextLayout[tasks.size()];
+		int lineCount = 0;
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = getResult(tasks.get(i));
+			lineCount += chunks[i].getLineCount();
+		}
+
+		int[] starts = new int[lineCount], ends = new int[lineCount];
+		float[] widths = new float[lineCount];
+		boolean[] hyphens = new boolean[lineCount];
+		float width = 0;
+		int line = 0;
+		for (int i = 0; i < chunks.length; i++) {
+			TextLayout chunk = chunks[i];
+			for (int j = 0; j < chunk.getLineCount(); j++, line++) {
+				starts[line] = chunkStarts[i] + chunk.getLineStart(j);
+				ends[line] = chunkStarts[i] + chunk.getLineEnd(j);
+				widths[line] = chunk.getLineWidth(j);
+				hyphens[line] = chunk.hasHyphen(j);
+			}
+			width = Math.max(width, chunk.getWidth());
+		}
+		float ellipsisWidth = chunks.length > 0 ? chunks[0].getEllipsisWidth() : 0;
+		float hyphenWidth = chunks.length > 0 ? chunks[0].getHyphenWidth() : 0;
+
+		int maxLines = request.getMaxLines();
+		if (maxLines < 0 || lineCount < maxLines)
+			return new TextLayout(text, lineCount, starts, ends, widths, hyphens, false, ellipsisWidth, hyphenWidth, width, -1);
+
+		// the last line may leave room for the ellipsis: break its paragraph again with the lines left
+		int paragraphStart = starts[maxLines - 1];
+		while (paragraphStart > request.getStartOffset() && text.charAt(paragraphStart - 1) != '\n')
+			paragraphStart--;
+		int kept = maxLines - 1;
+		while (kept > 0 && starts[kept - 1] >= paragraphStart)
+			kept--;
+		TextBreaker breaker = breakers.get();
+		breaker.setLayoutCache(null);
+		request.configure(breaker);
+		breaker.setMaxWidthLines(request.getMaxWidth(), maxLines - kept);
+		breaker.setStartOffset(paragraphStart);
+		breaker.breakText(text, request.getMeasurer());
+		TextLayout tail = breaker.getLayout();
+
+		int tailCount = tail.getLineCount();
+		width = tail.getWidth();
+		for (int i = 0; i < kept; i++)
+			width = Math.max(width, widths[i] + (hyphens[i] ? hyphenWidth : 0));
+		tail.copyTo(starts, ends, widths, hyphens, kept);
+		return new TextLayout(text, kept + tailCount, starts, ends, widths, hyphens, tail.isEllipsized(),
+				tail.getEllipsisWidth(), hyphenWidth, width, tail.getContinuation());
+	}
+
+	/**
+	 * Breaks a chunk of whole paragraphs of the text of request in as many
+	 * lines as they need.
+	 */
+	private static TextLayout breakChunk(LayoutRequest request, CharSequence chunk) {
+		TextBreaker breaker = breakers.get();
+		breaker.setLayoutCache(null);
+		request.configure(breaker);
+		breaker.setMaxWidthLines(request.getMaxWidth(), -1);
+		breaker.setStartOffset(0);
+		breaker.breakText(chunk, request.getMeasurer());
+		return breaker.getLayout();
+	}
+
+	private static TextLayout getResult(FutureTask<TextLayout> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private static int indexOfNewline(CharSequence text, int fromIndex) {
+		if (text instanceof MappedText)
+			return ((MappedText) text).indexOfNewline(fromIndex);
+		int len = text.length();
+		for (int i = fromIndex; i < len; i++) {
+			if (text.charAt(i) == '\n')
+				return i;
+		}
+		return -1;
+	}
+
+	private static int[] grow(int[] array) {
+		int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
@@ -0,0 +1,217 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.lang.reflect.Method;
+
+import android.os.Build;
+import android.view.View;
+
+/**
+ * Optional instrumentation of the layout and drawing of TextWrapView and
+ * ImageTextWrapView. It is disabled by default, in which case the views only
+ * pay for a volatile read per measure and draw pass; when enabled, one pass
+ * every getSampleRate() is timed, reported to the listener and added to the
+ * stats of the view and to the global stats, and it shows up as an
+ * android.os.Trace section on API 18 and later.
+ * 
+ * Every time is in nanoseconds.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class LayoutMetrics {
+	public interface Listener {
+		/**
+		 * Called after a text of view has been broken in lines, on the thread
+		 * that measured the view. measureCalls is the number of width
+		 * measurements of the break, allocations the number of objects and
+		 * arrays the breaker allocated.
+		 */
+		public void onBreak(View view, long nanos, int measureCalls, int lineCount, int allocations);
+
+		/**
+		 * Called after view has been drawn.
+		 */
+		public void onDraw(View view, long nanos);
+
+		/**
+		 * Called on the main thread when a thumbnail decoded and cropped on a
+		 * background thread is delivered to view. allocations is the number of
+		 * bitmaps the crop allocated.
+		 */
+		public void onCrop(View view, long nanos, int allocations);
+	}
+
+	private static volatile boolean enabled;
+	private static volatile int sampleRate = 1;
+	private static int sampleCount;
+	private static volatile Listener listener;
+	private static final LayoutStats globalStats = new LayoutStats();
+
+	// android.os.Trace, API 18
+	private static final Method TRACE_BEGIN, TRACE_END;
+
+	static {
+		Method begin = null, end = null;
+		if (Build.VERSION.SDK_INT >= 18) {
+			try {
+				Class<?> trace = Class.forName("android.os.Trace");
+				begin = trace.getMethod("beginSection", String.class);
+				end = trace.getMethod("endSection");
+			} catch (Exception e) {
+				begin = end = null;
+			}
+		}
+		TRACE_BEGIN = begin;
+		TRACE_END = end;
+	}
+
+	private LayoutMetrics() {
+	}
+
+	public static void setEnabled(boolean enabled) {
+		LayoutMetrics.enabled = enabled;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Records one measure or draw pass every sampleRate, 1 records all of
+	 * them.
+	 */
+	public static void setSampleRate(int sampleRate) {
+		if (sampleRate < 1)
+			throw new IllegalArgumentException("sampleRate < 1");
+		LayoutMetrics.sampleRate = sampleRate;
+	}
+
+	public static int getSampleRate() {
+		return sampleRate;
+	}
+
+	public static void setListener(Listener listener) {
+		LayoutMetrics.listener = listener;
+	}
+
+	public static Listener getListener() {
+		return listener;
+	}
+
+	/**
+	 * The stats of every view, since the process started or the last
+	 * reset().
+	 */
+	public static LayoutStats getGlobalStats() {
+		return globalStats;
+	}
+
+	/**
+	 * Whether the current pass should be recorded.
+	 */
+	static boolean sample() {
+		if (!enabled)
+			return false;
+		int rate = sampleRate;
+		// racy if views are measured on several threads, which only skews the sampling
+		return rate == 1 || ++sampleCount % rate == 0;
+	}
+
+	static void beginSection(String name) {
+		if (TRACE_BEGIN != null)
+			invoke(TRACE_BEGIN, name);
+	}
+
+	static void endSection() {
+		if (TRACE_END != null)
+			invoke(TRACE_END, (Object[]) null);
+	}
+
+	private static void invoke(Method method, Object... args) {
+		try {
+			method.invoke(null, args);
+		} catch (Exception e) {
+			// tracing is best effort
+		}
+	}
+
+	/**
+	 * Breaks text with breaker, recording the break in stats and reporting it
+	 * to the listener.
+	 */
+	static float breakText(View view, LayoutStats stats, TextBreaker breaker, CharSequence text, WidthMeasurer wm,
+			PrecomputedLayout hint) {
+		CountingWidthMeasurer counter = new CountingWidthMeasurer(wm);
+		int allocations = breaker.getAllocationCount();
+		long start = System.nanoTime();
+		float width = breaker.breakText(text, counter, hint);
+		long nanos = System.nanoTime() - start;
+		allocations = breaker.getAllocationCount() - allocations;
+
+		stats.addBreak(nanos, counter.count, breaker.getLineCount(), allocations);
+		globalStats.addBreak(nanos, counter.count, breaker.getLineCount(), allocations);
+		Listener l = listener;
+		if (l != null)
+			l.onBreak(view, nanos, counter.count, breaker.getLineCount(), allocations);
+		return width;
+	}
+
+	static void recordDraw(View view, LayoutStats stats, long nanos) {
+		stats.addDraw(nanos);
+		globalStats.addDraw(nanos);
+		Listener l = listener;
+		if (l != null)
+			l.onDraw(view, nanos);
+	}
+
+	static void recordCrop(View view, LayoutStats stats, long nanos, int allocations) {
+		stats.addCrop(nanos, allocations);
+		globalStats.addCrop(nanos, allocations);
+		Listener l = listener;
+		if (l != null)
+			l.onCrop(view, nanos, allocations);
+	}
+
+	/**
+	 * Counts the calls to the measurer it wraps.
+	 */
+	private static final class CountingWidthMeasurer implements WidthMeasurer {
+		private final WidthMeasurer wm;
+		int count;
+
+		CountingWidthMeasurer(WidthMeasurer wm) {
+			this.wm = wm;
+		}
+
+		@Override
+		public float measureText(CharSequence text, int start, int end) {
+			count++;
+			return wm.measureText(text, start, end);
+		}
+
+		@Override
+		public float getTextWidths(CharSequence text, int start, int end, float[] widths) {
+			count++;
+			return wm.getTextWidths(text, start, end, widths);
+		}
+
+		@Override
+		public StyleKey getStyleKey() {
+			return wm.getStyleKey();
+		}
+	}
+}
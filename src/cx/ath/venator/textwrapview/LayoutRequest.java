@@ -0,0 +1,230 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+/**
+ * Immutable description of a text to break: the text, the measurer and the
+ * style it measured with, the width profile and the breaking options, the
+ * same inputs a configured TextBreaker would use. Requests can be built on
+ * one thread and handed to LayoutEngine on any other.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class LayoutRequest {
+	private final CharSequence text;
+	private final WidthMeasurer measurer;
+	private final StyleKey style;
+	private final int maxWidth, maxLines;
+	private final int[] maxWidths;
+	private final LineGeometry geometry;
+	private final int breakStrategy;
+	private final Hyphenator hyphenator;
+	private final boolean ellipsize;
+	private final String ellipsis;
+	private final int ellipsizeMode;
+	private final int startOffset;
+
+	private LayoutRequest(Builder b) {
+		// other CharSequences may change once the request is built
+		text = b.text instanceof String || b.text instanceof MappedText ? b.text : b.text.toString();
+		measurer = b.measurer;
+		style = b.measurer.getStyleKey();
+		maxWidth = b.maxWidth;
+		maxLines = b.maxLines;
+		maxWidths = b.maxWidths;
+		geometry = b.geometry;
+		breakStrategy = b.breakStrategy;
+		hyphenator = b.hyphenator;
+		ellipsize = b.ellipsize;
+		ellipsis = b.ellipsis;
+		ellipsizeMode = b.ellipsizeMode;
+		startOffset = b.startOffset;
+	}
+
+	public CharSequence getText() {
+		return text;
+	}
+
+	public WidthMeasurer getMeasurer() {
+		return measurer;
+	}
+
+	/**
+	 * The style of the measurer when the request was built.
+	 */
+	public StyleKey getStyle() {
+		return style;
+	}
+
+	public int getMaxWidth() {
+		return maxWidth;
+	}
+
+	public int getMaxLines() {
+		return maxLines;
+	}
+
+	public LineGeometry getLineGeometry() {
+		return geometry;
+	}
+
+	public int getBreakStrategy() {
+		return breakStrategy;
+	}
+
+	public Hyphenator getHyphenator() {
+		return hyphenator;
+	}
+
+	public boolean isEllipsize() {
+		return ellipsize;
+	}
+
+	public String getEllipsis() {
+		return ellipsis;
+	}
+
+	public int getEllipsizeMode() {
+		return ellipsizeMode;
+	}
+
+	public int getStartOffset() {
+		return startOffset;
+	}
+
+	/**
+	 * Whether every line is maxWidth wide.
+	 */
+	boolean hasUniformWidth() {
+		return geometry == null && maxWidths == null;
+	}
+
+	/**
+	 * Sets up breaker to break this request.
+	 */
+	void configure(TextBreaker breaker) {
+		if (geometry != null)
+			breaker.setLineGeometry(geometry);
+		else if (maxWidths != null)
+			breaker.setMaxWidths(maxWidths);
+		else
+			breaker.setMaxWidthLines(maxWidth, maxLines);
+		breaker.setBreakStrategy(breakStrategy);
+		breaker.setHyphenator(hyphenator);
+		breaker.setEllipsize(ellipsize);
+		breaker.setEllipsis(ellipsis);
+		breaker.setEllipsizeMode(ellipsizeMode);
+		breaker.setStartOffset(startOffset);
+	}
+
+	/**
+	 * Builds LayoutRequests. The measurer must be safe to use from the
+	 * threads the request will be broken on: MonospaceWidthMeasurer is, a
+	 * PaintWidthMeasurer is not, use PaintWidthMeasurer.snapshot() instead.
+	 */
+	public static final class Builder {
+		private final CharSequence text;
+		private final WidthMeasurer measurer;
+		private int maxWidth, maxLines = -1;
+		private int[] maxWidths;
+		private LineGeometry geometry;
+		private int breakStrategy = TextBreaker.BREAK_STRATEGY_GREEDY;
+		private Hyphenator hyphenator;
+		private boolean ellipsize = true;
+		private String ellipsis = TextBreaker.ELLIPSIS;
+		private int ellipsizeMode = TextBreaker.ELLIPSIZE_END;
+		private int startOffset;
+
+		public Builder(CharSequence text, WidthMeasurer measurer) {
+			if (text == null)
+				throw new NullPointerException("text == null");
+			if (measurer == null)
+				throw new NullPointerException("measurer == null");
+			this.text = text;
+			this.measurer = measurer;
+		}
+
+		/**
+		 * Up to maxLines lines (-1 for no limit) maxWidth pixels wide.
+		 */
+		public Builder setMaxWidthLines(int maxWidth, int maxLines) {
+			this.maxWidth = maxWidth;
+			this.maxLines = maxLines;
+			this.maxWidths = null;
+			this.geometry = null;
+			return this;
+		}
+
+		/**
+		 * One line per element of maxWidths, as wide as the element.
+		 */
+		public Builder setMaxWidths(int[] maxWidths) {
+			this.maxWidths = maxWidths.clone();
+			this.geometry = null;
+			return this;
+		}
+
+		public Builder setLineGeometry(LineGeometry geometry) {
+			this.geometry = geometry;
+			this.maxWidths = null;
+			return this;
+		}
+
+		public Builder setBreakStrategy(int breakStrategy) {
+			if (breakStrategy != TextBreaker.BREAK_STRATEGY_GREEDY && breakStrategy != TextBreaker.BREAK_STRATEGY_BALANCED)
+				throw new IllegalArgumentException("Unknown break strategy " + breakStrategy);
+			this.breakStrategy = breakStrategy;
+			return this;
+		}
+
+		public Builder setHyphenator(Hyphenator hyphenator) {
+			this.hyphenator = hyphenator;
+			return this;
+		}
+
+		public Builder setEllipsize(boolean ellipsize) {
+			this.ellipsize = ellipsize;
+			return this;
+		}
+
+		public Builder setEllipsis(String ellipsis) {
+			if (ellipsis == null)
+				throw new NullPointerException("ellipsis == null");
+			this.ellipsis = ellipsis;
+			return this;
+		}
+
+		public Builder setEllipsizeMode(int ellipsizeMode) {
+			if (ellipsizeMode != TextBreaker.ELLIPSIZE_END && ellipsizeMode != TextBreaker.ELLIPSIZE_START
+					&& ellipsizeMode != TextBreaker.ELLIPSIZE_MIDDLE)
+				throw new IllegalArgumentException("Unknown ellipsize mode " + ellipsizeMode);
+			this.ellipsizeMode = ellipsizeMode;
+			return this;
+		}
+
+		public Builder setStartOffset(int startOffset) {
+			if (startOffset < 0)
+				throw new IllegalArgumentException("startOffset < 0");
+			this.startOffset = startOffset;
+			return this;
+		}
+
+		public LayoutRequest build() {
+			return new LayoutRequest(this);
+		}
+	}
+}
@@ -0,0 +1,646 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of TextLayouts, which survives the process: after a cold
+ * start a TextBreaker adopts the lines it computed in the last session
+ * instead of measuring the text again. Its size is a budget in bytes, the
+ * least recently used snapshots are deleted first.
+ * 
+ * A snapshot is a small binary file holding the lines and the fingerprints
+ * of what they were computed from: the text, the style, the widths of the
+ * lines and the breaking options. The style is identified by the widths of
+ * a few probe characters rather than by the typeface object, so a font
+ * update invalidates the snapshots. Snapshots which don't match or are
+ * damaged are ignored and deleted, the text is then broken as usual.
+ * 
+ * File names start with the length of the text, so that texts of other
+ * lengths are not even hashed. A MappedText is keyed by its file rather
+ * than read: its length is its size in bytes. Texts are hashed on the
+ * calling thread when a snapshot of that length exists, and snapshots
+ * encoded and written on a background thread. The most recently used snapshots are also read ahead there when
+ * the cache is created; the others are read on the calling thread, only for
+ * the keys known to exist, which StrictMode reports as a disk read when that
+ * is the main thread.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class LayoutSnapshotCache {
+	private static final String TAG = "LayoutSnapshotCache";
+	static final int MAGIC = 0x54574C32; // "TWL2"
+	private static final String SUFFIX = ".twl";
+	private static final String TEMP_SUFFIX = ".tmp";
+	// bytes of the fixed fields and of each line
+	private static final int HEADER_SIZE = 4 + 4 + 8 * 4 + 4;
+	private static final int TRAILER_SIZE = 1 + 4 * 3 + 4 + 4 * 4 + 4;
+	private static final int LINE_SIZE = 4 + 4 + 4 + 1;
+	// snapshots bigger than this are mapped rather than read
+	private static final int MAP_THRESHOLD = 64 * 1024;
+	// bytes of the most recently used snapshots read ahead
+	private static final int PRELOAD_BYTES = 256 * 1024;
+	// characters whose widths tell fonts apart
+	private static final String PROBE = "AV To Wa ffi fl 0123456789 mwil.,;MW@\u00e9\u00df\u0416\u4e00";
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final File directory;
+	private final long maxBytes;
+	private final ExecutorService writer;
+
+	// file name to file size, least recently used first
+	private final LinkedHashMap<String, Integer> index = new LinkedHashMap<String, Integer>(16, 0.75f, true);
+	private long size;
+	// text length to the number of snapshots of that length in the index
+	private final HashMap<Integer, Integer> lengths = new HashMap<Integer, Integer>();
+	// file name to the bytes read ahead, until asked for
+	private final HashMap<String, byte[]> preloaded = new HashMap<String, byte[]>();
+	private final HashMap<StyleKey, Long> styleHashes = new HashMap<StyleKey, Long>();
+
+	private int hitCount;
+	private int missCount;
+	private int putCount;
+	private int evictionCount;
+
+	/**
+	 * A cache of at most maxBytes of snapshots in directory, which it owns.
+	 * Lists the directory, so better created off the main thread.
+	 */
+	public LayoutSnapshotCache(File directory, long maxBytes) {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("maxBytes <= 0");
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, TAG);
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+
+		directory.mkdirs();
+		File[] files = directory.listFiles();
+		if (files == null)
+			files = new File[0];
+		// the least recently used come first, as in the index
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				long d = a.lastModified() - b.lastModified();
+				return d < 0 ? -1 : (d > 0 ? 1 : 0);
+			}
+		});
+		synchronized (this) {
+			for (File f : files) {
+				String name = f.getName();
+				if (name.endsWith(SUFFIX) && getTextLength(name) >= 0) {
+					addToIndex(name, (int) f.length());
+				} else if (name.endsWith(SUFFIX) || name.endsWith(TEMP_SUFFIX)) {
+					// named by an older version, or left by a write the process didn't live to finish
+					f.delete();
+				}
+			}
+		}
+		trimToSize(maxBytes);
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				preload();
+			}
+		});
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * The lines breaker would compute for text, as stored by a previous
+	 * put() with the same inputs, or null.
+	 */
+	TextLayout get(TextBreaker breaker, CharSequence text, WidthMeasurer wm) {
+		int length = getLength(text);
+		synchronized (this) {
+			if (!lengths.containsKey(Integer.valueOf(length))) {
+				missCount++;
+				return null;
+			}
+		}
+		long textHash = hashText(text);
+		long styleHash = hashStyle(wm);
+		long optionsHash = hashOptions(breaker);
+		String name = getFileName(length, textHash, styleHash, optionsHash, getFirstWidth(breaker));
+		byte[] bytes;
+		synchronized (this) {
+			if (!index.containsKey(name)) {
+				missCount++;
+				return null;
+			}
+			// adopted layouts are kept by the layout cache, the bytes are not needed again
+			bytes = preloaded.remove(name);
+		}
+
+		TextLayout layout = null;
+		File file = new File(directory, name);
+		try {
+			ByteBuffer buf = bytes != null ? ByteBuffer.wrap(bytes) : read(file);
+			if (buf != null)
+				layout = parse(buf, breaker, text, textHash, styleHash, optionsHash);
+		} catch (IOException e) {
+			// deleted or unreadable, as good as damaged
+		}
+		synchronized (this) {
+			if (layout != null) {
+				hitCount++;
+			} else {
+				missCount++;
+				remove(name);
+			}
+		}
+		if (layout != null)
+			touch(file);
+		return layout;
+	}
+
+	/**
+	 * Stores layout, computed by breaker from text, unless a snapshot with
+	 * the same inputs is stored already. The text is hashed and the file
+	 * written later, only the options of breaker are read now.
+	 */
+	void put(TextBreaker breaker, CharSequence text, WidthMeasurer wm, final TextLayout layout) {
+		// Strings and files can't change until the writer reads them
+		final CharSequence source = text instanceof String || text instanceof MappedText ? text : text.toString();
+		final long styleHash = hashStyle(wm);
+		final long optionsHash = hashOptions(breaker);
+		final long profileHash = hashProfile(breaker, getProfileLines(breaker, layout.getLineCount()));
+		final int firstWidth = getFirstWidth(breaker);
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				long textHash = hashText(source);
+				int length = getLength(source);
+				String name = getFileName(length, textHash, styleHash, optionsHash, firstWidth);
+				synchronized (LayoutSnapshotCache.this) {
+					if (index.containsKey(name))
+						return;
+					putCount++;
+				}
+				write(name, encode(layout, length, textHash, styleHash, optionsHash, profileHash));
+			}
+		});
+	}
+
+	/**
+	 * Waits for the snapshots put so far to be written.
+	 */
+	void flush() throws InterruptedException {
+		try {
+			writer.submit(new Runnable() {
+				@Override
+				public void run() {
+				}
+			}).get();
+		} catch (ExecutionException e) {
+			// an empty task doesn't throw
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Deletes every snapshot, e.g. after the fonts of the app have changed in
+	 * a way the probe characters don't show.
+	 */
+	public void clear() {
+		trimToSize(0);
+	}
+
+	private static byte[] encode(TextLayout layout, int textLength, long textHash, long styleHash, long optionsHash,
+			long profileHash) {
+		int lineCount = layout.getLineCount();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + lineCount * LINE_SIZE + TRAILER_SIZE);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(textLength);
+			out.writeLong(textHash);
+			out.writeLong(styleHash);
+			out.writeLong(optionsHash);
+			out.writeLong(profileHash);
+			out.writeInt(lineCount);
+			for (int i = 0; i < lineCount; i++) {
+				out.writeInt(layout.getLineStart(i));
+				out.writeInt(layout.getLineEnd(i));
+				out.writeFloat(layout.getLineWidth(i));
+				out.writeBoolean(layout.hasHyphen(i));
+			}
+			int elisionLine = layout.getElisionLine();
+			out.writeBoolean(layout.isEllipsized() && elisionLine < 0);
+			out.writeFloat(layout.getEllipsisWidth());
+			out.writeFloat(layout.getHyphenWidth());
+			out.writeFloat(layout.getWidth());
+			out.writeInt(layout.getContinuation());
+			out.writeInt(elisionLine);
+			out.writeInt(elisionLine >= 0 ? layout.getEllipsisStart(elisionLine) : 0);
+			out.writeInt(elisionLine >= 0 ? layout.getEllipsisEnd(elisionLine) : 0);
+			out.writeFloat(elisionLine >= 0 ? layout.getEllipsisX(elisionLine) : 0);
+			CRC32 crc = new CRC32();
+			crc.update(bytes.toByteArray());
+			out.writeInt((int) crc.getValue());
+		} catch (IOException e) {
+			// a ByteArrayOutputStream doesn't throw
+			throw new RuntimeException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads the most recently used snapshots into memory, up to PRELOAD_BYTES.
+	 */
+	private void preload() {
+		String[] names;
+		synchronized (this) {
+			names = index.keySet().toArray(new String[index.size()]);
+		}
+		int budget = PRELOAD_BYTES;
+		for (int i = names.length - 1; i >= 0; i--) {
+			File file = new File(directory, names[i]);
+			long length = file.length();
+			if (length > budget)
+				break;
+			byte[] bytes = new byte[(int) length];
+			try {
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					raf.readFully(bytes);
+				} finally {
+					raf.close();
+				}
+			} catch (IOException e) {
+				// read again, and found damaged, if asked for
+				continue;
+			}
+			budget -= bytes.length;
+			synchronized (this) {
+				if (index.containsKey(names[i]))
+					preloaded.put(names[i], bytes);
+			}
+		}
+	}
+
+	/**
+	 * The content of file, or null if too short or too long to be a snapshot.
+	 */
+	private static ByteBuffer read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ByteBuffer buf;
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length < HEADER_SIZE + TRAILER_SIZE || length > Integer.MAX_VALUE)
+				return null;
+			if (length >= MAP_THRESHOLD) {
+				buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			} else {
+				buf = ByteBuffer.allocate((int) length);
+				while (buf.hasRemaining()) {
+					if (channel.read(buf) < 0)
+						return null;
+				}
+				buf.flip();
+			}
+		} finally {
+			raf.close();
+		}
+		return buf;
+	}
+
+	private static TextLayout parse(ByteBuffer buf, TextBreaker breaker, CharSequence text, long textHash,
+			long styleHash, long optionsHash) {
+		if (buf.remaining() < HEADER_SIZE + TRAILER_SIZE)
+			return null;
+		int len = getLength(text);
+		if (buf.getInt() != MAGIC || buf.getInt() != len || buf.getLong() != textHash || buf.getLong() != styleHash
+				|| buf.getLong() != optionsHash)
+			return null;
+		long profileHash = buf.getLong();
+		int lineCount = buf.getInt();
+		if (lineCount < 0 || lineCount > (buf.remaining() - TRAILER_SIZE) / LINE_SIZE
+				|| buf.remaining() != lineCount * LINE_SIZE + TRAILER_SIZE)
+			return null;
+		if (breaker.getMaxLines() >= 0 && lineCount > breaker.getMaxLines())
+			return null;
+
+		int[] starts = new int[lineCount], ends = new int[lineCount];
+		float[] widths = new float[lineCount];
+		boolean[] hyphens = new boolean[lineCount];
+		int lastStart = 0;
+		for (int i = 0; i < lineCount; i++) {
+			starts[i] = buf.getInt();
+			ends[i] = buf.getInt();
+			widths[i] = buf.getFloat();
+			hyphens[i] = buf.get() != 0;
+			if (starts[i] < lastStart || ends[i] < starts[i] || ends[i] > len)
+				return null;
+			lastStart = starts[i];
+		}
+		boolean ellipsized = buf.get() != 0;
+		float ellipsisWidth = buf.getFloat();
+		float hyphenWidth = buf.getFloat();
+		float width = buf.getFloat();
+		int continuation = buf.getInt();
+		if (continuation < -1 || continuation > len)
+			return null;
+		int elisionLine = buf.getInt();
+		int elisionStart = buf.getInt();
+		int elisionEnd = buf.getInt();
+		float elisionX = buf.getFloat();
+		if (elisionLine < -1 || elisionLine >= lineCount || (elisionLine >= 0 && (elisionStart < starts[elisionLine]
+				|| elisionEnd < elisionStart || ends[elisionLine] < elisionEnd)))
+			return null;
+
+		int crcEnd = buf.position();
+		int storedCrc = buf.getInt();
+		CRC32 crc = new CRC32();
+		buf.position(0);
+		if (buf.hasArray()) {
+			crc.update(buf.array(), buf.arrayOffset(), crcEnd);
+		} else {
+			byte[] chunk = new byte[4096];
+			while (buf.position() < crcEnd) {
+				int n = Math.min(chunk.length, crcEnd - buf.position());
+				buf.get(chunk, 0, n);
+				crc.update(chunk, 0, n);
+			}
+		}
+		if ((int) crc.getValue() != storedCrc)
+			return null;
+
+		// checked last, the lines tell how many line widths it covers
+		if (hashProfile(breaker, getProfileLines(breaker, lineCount)) != profileHash)
+			return null;
+		return new TextLayout(text, lineCount, starts, ends, widths, hyphens, ellipsized, ellipsisWidth, hyphenWidth, width,
+				continuation, elisionLine, elisionStart, elisionEnd, elisionX);
+	}
+
+	private void write(String name, byte[] bytes) {
+		File temp = new File(directory, name + TEMP_SUFFIX);
+		File file = new File(directory, name);
+		try {
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				out.write(bytes);
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			// readers see either no file or the whole of it
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				return;
+			}
+		} catch (IOException e) {
+			temp.delete();
+			return;
+		}
+		synchronized (this) {
+			removeFromIndex(name);
+			addToIndex(name, bytes.length);
+		}
+		trimToSize(maxBytes);
+	}
+
+	private void touch(final File file) {
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				// the order of the index in the next session
+				file.setLastModified(System.currentTimeMillis());
+			}
+		});
+	}
+
+	private synchronized void remove(String name) {
+		preloaded.remove(name);
+		if (removeFromIndex(name))
+			new File(directory, name).delete();
+	}
+
+	private void addToIndex(String name, int fileSize) {
+		index.put(name, Integer.valueOf(fileSize));
+		size += fileSize;
+		Integer length = Integer.valueOf(getTextLength(name));
+		Integer count = lengths.get(length);
+		lengths.put(length, Integer.valueOf(count != null ? count.intValue() + 1 : 1));
+	}
+
+	/**
+	 * Removes name from the index, returns false if it wasn't there.
+	 */
+	private boolean removeFromIndex(String name) {
+		Integer old = index.remove(name);
+		if (old == null)
+			return false;
+		size -= old.intValue();
+		Integer length = Integer.valueOf(getTextLength(name));
+		int count = lengths.get(length).intValue();
+		if (count == 1)
+			lengths.remove(length);
+		else
+			lengths.put(length, Integer.valueOf(count - 1));
+		return true;
+	}
+
+	private synchronized void trimToSize(long maxSize) {
+		while (size > maxSize && !index.isEmpty()) {
+			String eldest = index.keySet().iterator().next();
+			removeFromIndex(eldest);
+			preloaded.remove(eldest);
+			new File(directory, eldest).delete();
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * Total size of the snapshots, in bytes.
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	public long maxSize() {
+		return maxBytes;
+	}
+
+	public synchronized int hitCount() {
+		return hitCount;
+	}
+
+	public synchronized int missCount() {
+		return missCount;
+	}
+
+	public synchronized int putCount() {
+		return putCount;
+	}
+
+	public synchronized int evictionCount() {
+		return evictionCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		int accesses = hitCount + missCount;
+		int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+		return String.format("LayoutSnapshotCache[size=%d,maxSize=%d,hits=%d,misses=%d,evictions=%d,hitRate=%d%%]", size,
+				maxBytes, hitCount, missCount, evictionCount, hitPercent);
+	}
+
+	private static String getFileName(int textLength, long textHash, long styleHash, long optionsHash, int firstWidth) {
+		long h = FNV_OFFSET;
+		h = mix(h, textLength);
+		h = mix(h, textHash);
+		h = mix(h, styleHash);
+		h = mix(h, optionsHash);
+		// the rest of the width profile is checked once the line count is known
+		h = mix(h, firstWidth);
+		return Integer.toHexString(textLength) + '-' + Long.toHexString(h) + SUFFIX;
+	}
+
+	/**
+	 * The length of the text a snapshot file was named for, or -1 if it
+	 * wasn't named by getFileName().
+	 */
+	private static int getTextLength(String name) {
+		int dash = name.indexOf('-');
+		if (dash <= 0 || dash > 8)
+			return -1;
+		try {
+			return Integer.parseInt(name.substring(0, dash), 16);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * The length of text, the size in bytes of a MappedText, which isn't
+	 * read to count its chars.
+	 */
+	private static int getLength(CharSequence text) {
+		return text instanceof MappedText ? ((MappedText) text).getByteLength() : text.length();
+	}
+
+	private static int getFirstWidth(TextBreaker breaker) {
+		return breaker.getMaxLines() != 0 ? breaker.getAvailableWidth(0) : 0;
+	}
+
+	/**
+	 * The lines whose width can affect a layout of lineCount lines: all of
+	 * them if limited, otherwise the ones used and the next one.
+	 */
+	private static int getProfileLines(TextBreaker breaker, int lineCount) {
+		return breaker.getMaxLines() >= 0 ? breaker.getMaxLines() : lineCount + 1;
+	}
+
+	private static long hashProfile(TextBreaker breaker, int lines) {
+		long h = FNV_OFFSET;
+		for (int i = 0; i < lines; i++)
+			h = mix(h, breaker.getAvailableWidth(i));
+		return h;
+	}
+
+	private static long hashOptions(TextBreaker breaker) {
+		long h = FNV_OFFSET;
+		h = mix(h, breaker.getMaxLines());
+		h = mix(h, breaker.getBreakStrategy());
+		h = mix(h, breaker.isEllipsize() ? 1 : 0);
+		h = mix(h, breaker.getEllipsizeMode());
+		h = mix(h, breaker.getEllipsis().hashCode());
+		h = mix(h, breaker.getStartOffset());
+		Hyphenator hyphenator = breaker.getHyphenator();
+		return mix(h, hyphenator != null ? hyphenator.getFingerprint() : 0);
+	}
+
+	private long hashStyle(WidthMeasurer wm) {
+		StyleKey style = wm.getStyleKey();
+		synchronized (styleHashes) {
+			Long cached = styleHashes.get(style);
+			if (cached != null)
+				return cached.longValue();
+		}
+		long h = FNV_OFFSET;
+		h = mix(h, Float.floatToIntBits(style.getTextSize()));
+		h = mix(h, Float.floatToIntBits(style.getTextScaleX()));
+		h = mix(h, Float.floatToIntBits(style.getTextSkewX()));
+		h = mix(h, style.getFlags());
+		float[] widths = new float[PROBE.length()];
+		wm.getTextWidths(PROBE, 0, PROBE.length(), widths);
+		for (float w : widths)
+			h = mix(h, Float.floatToIntBits(w));
+		synchronized (styleHashes) {
+			styleHashes.put(style, Long.valueOf(h));
+		}
+		return h;
+	}
+
+	/**
+	 * 64 bit FNV-1a of the chars of text, which unlike hashCode() is unlikely
+	 * to collide across the texts of a whole cache. A MappedText is hashed by
+	 * file, modification time and size instead.
+	 */
+	private static long hashText(CharSequence text) {
+		if (text instanceof MappedText)
+			return mix(FNV_OFFSET, text.hashCode());
+		long h = FNV_OFFSET;
+		int len = text.length();
+		for (int i = 0; i < len; i++) {
+			char c = text.charAt(i);
+			h = (h ^ (c & 0xff)) * FNV_PRIME;
+			h = (h ^ (c >>> 8)) * FNV_PRIME;
+		}
+		return h;
+	}
+
+	static long mix(long h, long value) {
+		for (int i = 0; i < 8; i++) {
+			h = (h ^ (value & 0xff)) * FNV_PRIME;
+			value >>>= 8;
+		}
+		return h;
+	}
+}
@@ -0,0 +1,164 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.util.Arrays;
+
+/**
+ * Layout metrics of a view, or of every view, recorded by LayoutMetrics.
+ * Durations are kept in histograms with power of two buckets: bucket 0
+ * counts durations below 2 microseconds, bucket i those from 2^i to 2^(i+1)
+ * microseconds and the last bucket everything longer.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class LayoutStats {
+	public static final int BUCKET_COUNT = 20;
+
+	private int breakCount;
+	private long breakNanos;
+	private final int[] breakHistogram = new int[BUCKET_COUNT];
+	private long measureCalls;
+	private long lineCount;
+	private long allocations;
+
+	private int drawCount;
+	private long drawNanos;
+	private final int[] drawHistogram = new int[BUCKET_COUNT];
+
+	private int cropCount;
+	private long cropNanos;
+	private long bitmapAllocations;
+
+	/**
+	 * The bucket of a duration.
+	 */
+	public static int getBucket(long nanos) {
+		long micros = nanos / 1000;
+		if (micros < 2)
+			return 0;
+		// index of the highest bit set
+		int bucket = 63 - Long.numberOfLeadingZeros(micros);
+		return Math.min(bucket, BUCKET_COUNT - 1);
+	}
+
+	synchronized void addBreak(long nanos, int measureCalls, int lineCount, int allocations) {
+		breakCount++;
+		breakNanos += nanos;
+		breakHistogram[getBucket(nanos)]++;
+		this.measureCalls += measureCalls;
+		this.lineCount += lineCount;
+		this.allocations += allocations;
+	}
+
+	synchronized void addDraw(long nanos) {
+		drawCount++;
+		drawNanos += nanos;
+		drawHistogram[getBucket(nanos)]++;
+	}
+
+	synchronized void addCrop(long nanos, int allocations) {
+		cropCount++;
+		cropNanos += nanos;
+		bitmapAllocations += allocations;
+	}
+
+	public synchronized int getBreakCount() {
+		return breakCount;
+	}
+
+	public synchronized long getBreakNanos() {
+		return breakNanos;
+	}
+
+	/**
+	 * A copy of the break duration histogram.
+	 */
+	public synchronized int[] getBreakHistogram() {
+		return breakHistogram.clone();
+	}
+
+	public synchronized long getMeasureCalls() {
+		return measureCalls;
+	}
+
+	/**
+	 * The sum of the line counts of every break.
+	 */
+	public synchronized long getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * The objects and arrays allocated by the breakers.
+	 */
+	public synchronized long getAllocations() {
+		return allocations;
+	}
+
+	public synchronized int getDrawCount() {
+		return drawCount;
+	}
+
+	public synchronized long getDrawNanos() {
+		return drawNanos;
+	}
+
+	/**
+	 * A copy of the draw duration histogram.
+	 */
+	public synchronized int[] getDrawHistogram() {
+		return drawHistogram.clone();
+	}
+
+	/**
+	 * The number of thumbnails decoded and cropped.
+	 */
+	public synchronized int getCropCount() {
+		return cropCount;
+	}
+
+	public synchronized long getCropNanos() {
+		return cropNanos;
+	}
+
+	public synchronized long getBitmapAllocations() {
+		return bitmapAllocations;
+	}
+
+	public synchronized void reset() {
+		breakCount = 0;
+		breakNanos = 0;
+		Arrays.fill(breakHistogram, 0);
+		measureCalls = 0;
+		lineCount = 0;
+		allocations = 0;
+		drawCount = 0;
+		drawNanos = 0;
+		Arrays.fill(drawHistogram, 0);
+		cropCount = 0;
+		cropNanos = 0;
+		bitmapAllocations = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "LayoutStats[breaks=" + breakCount + ",breakMs=" + breakNanos / 1000000 + ",measureCalls=" + measureCalls
+				+ ",lines=" + lineCount + ",allocations=" + allocations + ",draws=" + drawCount + ",drawMs="
+				+ drawNanos / 1000000 + ",crops=" + cropCount + ",cropMs=" + cropNanos / 1000000 + ",bitmapAllocations="
+				+ bitmapAllocations + "]";
+	}
+}
@@ -0,0 +1,44 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+/**
+ * The width available to each line of a text, and where the line starts,
+ * for texts flowing around other content. TextBreaker only asks for the
+ * widths, views also for the offsets to draw the lines at.
+ * 
+ * Breaks are skipped and layouts cached by geometry, so implementations must
+ * be immutable and equal when they return the same widths.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public interface LineGeometry {
+	/**
+	 * The maximum number of lines, -1 for no limit.
+	 */
+	public int getLineCount();
+
+	/**
+	 * The width available to line, in pixels.
+	 */
+	public int getWidth(int line);
+
+	/**
+	 * The distance of line from the left edge of the text area, in pixels.
+	 */
+	public int getOffset(int line);
+}
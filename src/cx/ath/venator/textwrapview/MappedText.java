@@ -0,0 +1,316 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only UTF-8 text file seen as a CharSequence, without reading it into
+ * the heap. The file is memory-mapped and decoded lazily, a window of chars
+ * at a time, around the positions which are read; the char offsets of the
+ * bytes are remembered every few thousand chars, so that reading anywhere
+ * only decodes from the nearest known offset.
+ * 
+ * length() counts the chars of the whole file the first time it is called,
+ * without decoding them. toString() decodes the whole file and should be
+ * avoided: TextBreaker and the virtualized TextWrapView only read what they
+ * lay out. Malformed bytes read as U+FFFD. Files are limited to 2 GB.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class MappedText implements CharSequence {
+	private static final char REPLACEMENT = '\uFFFD';
+	// chars between two remembered byte offsets
+	private static final int CHECKPOINT_SHIFT = 12;
+	private static final int WINDOW = 2 << CHECKPOINT_SHIFT;
+
+	private final File file;
+	private final long lastModified;
+	private final ByteBuffer bytes;
+	private final int byteStart, byteEnd;
+
+	// checkpoint k is the code point which starts at char k << CHECKPOINT_SHIFT
+	// or right after it, when that char is the second half of a surrogate pair
+	private int[] checkpointBytes = new int[16], checkpointChars = new int[16];
+	private int checkpointCount;
+	private int length = -1;
+
+	// decoded chars [windowStart, windowStart + windowLength)
+	private final char[] window = new char[WINDOW + 1];
+	private int windowStart, windowLength;
+
+	// result of seek()
+	private int seekByte, seekChar;
+
+	private MappedText(File file, ByteBuffer bytes) {
+		this.file = file;
+		this.lastModified = file.lastModified();
+		this.bytes = bytes;
+		this.byteEnd = bytes.limit();
+		// skip the byte order mark
+		if (byteEnd >= 3 && bytes.get(0) == (byte) 0xEF && bytes.get(1) == (byte) 0xBB && bytes.get(2) == (byte) 0xBF)
+			byteStart = 3;
+		else
+			byteStart = 0;
+		checkpointBytes[0] = byteStart;
+		checkpointChars[0] = 0;
+		checkpointCount = 1;
+	}
+
+	/**
+	 * Maps file in memory. The file must not be modified while mapped.
+	 */
+	public static MappedText open(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException(file + " is larger than 2 GB");
+			// the mapping stays valid after the channel is closed
+			return new MappedText(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		} finally {
+			in.close();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * The size of the file in bytes, an upper bound of length() known without
+	 * counting.
+	 */
+	public int getByteLength() {
+		return byteEnd - byteStart;
+	}
+
+	@Override
+	public synchronized int length() {
+		if (length < 0) {
+			// resume from the last checkpoint, counting the lead bytes eight at a time
+			int b = checkpointBytes[checkpointCount - 1];
+			int chars = checkpointChars[checkpointCount - 1];
+			for (; b + 8 <= byteEnd; b += 8) {
+				long v = bytes.getLong(b);
+				// continuation bytes 10xxxxxx count for nothing, 4 byte leads 1111xxxx for two
+				long continuation = v & ~(v << 1) & 0x8080808080808080L;
+				long wide = v & (v << 1) & (v << 2) & (v << 3) & 0x8080808080808080L;
+				chars += 8 - Long.bitCount(continuation) + Long.bitCount(wide);
+			}
+			for (; b < byteEnd; b++)
+				chars += charCount(bytes.get(b));
+			length = chars;
+		}
+		return length;
+	}
+
+	/**
+	 * Whether the chars have been counted, by length() or by a read up to
+	 * the end of the file.
+	 */
+	synchronized boolean isLengthKnown() {
+		return length >= 0;
+	}
+
+	private static int charCount(byte b) {
+		if ((b & 0xC0) == 0x80)
+			return 0;
+		return (b & 0xF0) == 0xF0 ? 2 : 1;
+	}
+
+	@Override
+	public synchronized char charAt(int index) {
+		if (index < 0)
+			throw new IndexOutOfBoundsException("index < 0");
+		if (index < windowStart || index >= windowStart + windowLength) {
+			// leave some room before index, for readers going back a few chars
+			seek(Math.max(0, index - (WINDOW >> 2)));
+			windowStart = seekChar;
+			windowLength = decode(seekByte, window, 0, WINDOW);
+			if (index >= windowStart + windowLength)
+				throw new IndexOutOfBoundsException("index >= length()");
+		}
+		return window[index - windowStart];
+	}
+
+	@Override
+	public synchronized CharSequence subSequence(int start, int end) {
+		if (start < 0 || end < start)
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end);
+		if (start >= windowStart && end <= windowStart + windowLength)
+			return new String(window, start - windowStart, end - start);
+		seek(start);
+		int skip = start - seekChar;
+		char[] chars = new char[end - seekChar + 1];
+		int count = decode(seekByte, chars, 0, end - seekChar);
+		if (count < end - seekChar)
+			throw new IndexOutOfBoundsException("end > length()");
+		return new String(chars, skip, end - start);
+	}
+
+	/**
+	 * Decodes the whole file.
+	 */
+	@Override
+	public String toString() {
+		return subSequence(0, length()).toString();
+	}
+
+	/**
+	 * Index of the first '\n' at or after fromIndex, or -1. Scans the bytes
+	 * without decoding them.
+	 */
+	synchronized int indexOfNewline(int fromIndex) {
+		seek(fromIndex);
+		int chars = seekChar;
+		for (int b = seekByte; b < byteEnd; b++) {
+			byte c = bytes.get(b);
+			if (c == '\n' && chars >= fromIndex)
+				return chars;
+			if ((chars >> CHECKPOINT_SHIFT) >= checkpointCount && charCount(c) != 0)
+				addCheckpoint(b, chars);
+			chars += charCount(c);
+		}
+		length = chars;
+		return -1;
+	}
+
+	/**
+	 * The number of bytes after the char at index, an upper bound of the
+	 * chars left.
+	 */
+	synchronized int getRemainingBytes(int index) {
+		seek(index);
+		return byteEnd - seekByte;
+	}
+
+	/**
+	 * Sets seekByte and seekChar to the start of the code point which holds
+	 * the char at index, or to the end of the file.
+	 */
+	private void seek(int index) {
+		int k = Math.min(index >> CHECKPOINT_SHIFT, checkpointCount - 1);
+		if (checkpointChars[k] > index)
+			k--;
+		int b = checkpointBytes[k];
+		int chars = checkpointChars[k];
+		for (; b < byteEnd; b++) {
+			byte c = bytes.get(b);
+			int n = charCount(c);
+			if (n == 0)
+				continue;
+			if (chars + n > index)
+				break;
+			if ((chars >> CHECKPOINT_SHIFT) >= checkpointCount)
+				addCheckpoint(b, chars);
+			chars += n;
+		}
+		seekByte = b;
+		seekChar = chars;
+	}
+
+	private void addCheckpoint(int b, int chars) {
+		// the first code point at or after the next multiple
+		if (chars < checkpointCount << CHECKPOINT_SHIFT)
+			return;
+		if (checkpointCount == checkpointBytes.length) {
+			int[] newBytes = new int[checkpointCount * 2], newChars = new int[checkpointCount * 2];
+			System.arraycopy(checkpointBytes, 0, newBytes, 0, checkpointCount);
+			System.arraycopy(checkpointChars, 0, newChars, 0, checkpointCount);
+			checkpointBytes = newBytes;
+			checkpointChars = newChars;
+		}
+		checkpointBytes[checkpointCount] = b;
+		checkpointChars[checkpointCount] = chars;
+		checkpointCount++;
+	}
+
+	/**
+	 * Decodes at least max chars, or up to the end of the file, starting
+	 * from byte b, into dst, which must have room for max + 1 of them.
+	 * Returns the number of chars decoded.
+	 */
+	private int decode(int b, char[] dst, int off, int max) {
+		int count = 0;
+		while (count < max && b < byteEnd) {
+			int c = bytes.get(b++) & 0xFF;
+			if (c < 0x80) {
+				dst[off + count++] = (char) c;
+				continue;
+			}
+			if ((c & 0xC0) == 0x80)
+				continue; // stray continuation byte, no char, as in charCount()
+			int need, cp, min;
+			if ((c & 0xE0) == 0xC0) {
+				need = 1;
+				cp = c & 0x1F;
+				min = 0x80;
+			} else if ((c & 0xF0) == 0xE0) {
+				need = 2;
+				cp = c & 0x0F;
+				min = 0x800;
+			} else {
+				need = 3;
+				cp = c & 0x07;
+				min = 0x10000;
+			}
+			int i = 0;
+			for (; i < need && b < byteEnd && (bytes.get(b) & 0xC0) == 0x80; i++)
+				cp = (cp << 6) | (bytes.get(b++) & 0x3F);
+			boolean valid = i == need && cp >= min && (c & 0xF8) != 0xF8 && cp <= 0x10FFFF
+					&& (cp < 0xD800 || cp > 0xDFFF);
+			if (need == 3) {
+				// two chars either way, as counted by charCount()
+				if (valid) {
+					// Character.highSurrogate() and lowSurrogate() need API 19
+					Character.toChars(cp, dst, off + count);
+					count += 2;
+				} else {
+					dst[off + count++] = REPLACEMENT;
+					dst[off + count++] = REPLACEMENT;
+				}
+			} else {
+				dst[off + count++] = valid ? (char) cp : REPLACEMENT;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Equal to the MappedText of the same, unmodified, file.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof MappedText))
+			return false;
+		MappedText other = (MappedText) o;
+		return file.equals(other.file) && lastModified == other.lastModified && byteEnd == other.byteEnd;
+	}
+
+	@Override
+	public int hashCode() {
+		return (file.hashCode() * 31 + (int) (lastModified ^ (lastModified >>> 32))) * 31 + byteEnd;
+	}
+}
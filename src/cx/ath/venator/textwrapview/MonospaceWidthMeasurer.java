@@ -0,0 +1,82 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+/**
+ * Plain JVM WidthMeasurer which models a monospace font: every character has
+ * the same advance, except for East Asian wide characters which take two
+ * cells and combining marks which take none. It needs no Android classes, so
+ * it can be used to test and benchmark TextBreaker on a desktop JVM.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class MonospaceWidthMeasurer implements WidthMeasurer {
+	private final float advance;
+	private final StyleKey styleKey;
+
+	public MonospaceWidthMeasurer(float advance) {
+		this.advance = advance;
+		this.styleKey = new StyleKey("monospace", advance, 1, 0, 0);
+	}
+
+	public float getAdvance() {
+		return advance;
+	}
+
+	@Override
+	public StyleKey getStyleKey() {
+		return styleKey;
+	}
+
+	@Override
+	public float measureText(CharSequence text, int start, int end) {
+		int cells = 0;
+		for (int i = start; i < end; i++)
+			cells += getCells(text.charAt(i));
+		return cells * advance;
+	}
+
+	@Override
+	public float getTextWidths(CharSequence text, int start, int end, float[] widths) {
+		int cells = 0;
+		for (int i = start; i < end; i++) {
+			int c = getCells(text.charAt(i));
+			widths[i - start] = c * advance;
+			cells += c;
+		}
+		return cells * advance;
+	}
+
+	static int getCells(char c) {
+		if (c < 0x0300)
+			return 1;
+		if ((c >= 0x1100 && c <= 0x115f) // Hangul Jamo
+				|| (c >= 0x2e80 && c <= 0xa4cf) // CJK radicals ... Yi
+				|| (c >= 0xac00 && c <= 0xd7a3) // Hangul syllables
+				|| (c >= 0xf900 && c <= 0xfaff) // CJK compatibility ideographs
+				|| (c >= 0xfe30 && c <= 0xfe4f) // CJK compatibility forms
+				|| (c >= 0xff00 && c <= 0xff60) // fullwidth forms
+				|| (c >= 0xffe0 && c <= 0xffe6))
+			return 2;
+		switch (Character.getType(c)) {
+		case Character.NON_SPACING_MARK:
+		case Character.ENCLOSING_MARK:
+		case Character.FORMAT:
+			return 0;
+		}
+		return 1;
+	}
+}
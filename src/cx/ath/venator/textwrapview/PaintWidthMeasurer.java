@@ -0,0 +1,253 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import android.graphics.Paint;
+import android.text.TextPaint;
+
+/**
+ * WidthMeasurer backed by a TextPaint. Character advances are measured once
+ * per style and cached in tables shared by every measurer in the process, so
+ * the width of a run of text is just the sum of its cached advances.
+ * 
+ * The paint is still asked directly for text where shaping matters: runs
+ * containing surrogate pairs, combining marks or complex scripts, and any
+ * text at all if the font turns out to apply kerning or ligatures.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class PaintWidthMeasurer implements WidthMeasurer {
+	private static final int WIDTH_FLAGS = Paint.FAKE_BOLD_TEXT_FLAG | Paint.LINEAR_TEXT_FLAG | Paint.SUBPIXEL_TEXT_FLAG;
+	private static final int MAX_TABLES = 16;
+
+	private static final Map<StyleKey, AdvanceTable> tables = new LinkedHashMap<StyleKey, AdvanceTable>(MAX_TABLES, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<StyleKey, AdvanceTable> eldest) {
+			return size() > MAX_TABLES;
+		}
+	};
+
+	private final TextPaint paint;
+	private StyleKey styleKey;
+	private AdvanceTable table;
+
+	public PaintWidthMeasurer(TextPaint paint) {
+		this.paint = paint;
+	}
+
+	public TextPaint getPaint() {
+		return paint;
+	}
+
+	@Override
+	public StyleKey getStyleKey() {
+		int flags = paint.getFlags() & WIDTH_FLAGS;
+		if (styleKey == null
+				|| !styleKey.matches(paint.getTypeface(), paint.getTextSize(), paint.getTextScaleX(), paint.getTextSkewX(), flags)) {
+			styleKey = new StyleKey(paint.getTypeface(), paint.getTextSize(), paint.getTextScaleX(), paint.getTextSkewX(), flags);
+			table = null;
+		}
+		return styleKey;
+	}
+
+	private AdvanceTable getTable() {
+		StyleKey key = getStyleKey();
+		if (table == null) {
+			synchronized (tables) {
+				table = tables.get(key);
+				if (table == null) {
+					table = new AdvanceTable(paint);
+					tables.put(key, table);
+				}
+			}
+		}
+		return table;
+	}
+
+	@Override
+	public float measureText(CharSequence text, int start, int end) {
+		AdvanceTable t = getTable();
+		if (!t.additive)
+			return paint.measureText(text, start, end);
+
+		float width = 0;
+		int pageIndex = -1;
+		float[] page = null;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if ((c >>> 8) != pageIndex) {
+				pageIndex = c >>> 8;
+				page = t.getPage(pageIndex, paint);
+			}
+			float advance = page[c & 0xff];
+			if (advance < 0) {
+				// this run needs shaping, let the paint measure it as a whole
+				return paint.measureText(text, start, end);
+			}
+			width += advance;
+		}
+		return width;
+	}
+
+	@Override
+	public float getTextWidths(CharSequence text, int start, int end, float[] widths) {
+		AdvanceTable t = getTable();
+		if (!t.additive)
+			return getShapedWidths(text, start, end, widths);
+
+		float width = 0;
+		int pageIndex = -1;
+		float[] page = null;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if ((c >>> 8) != pageIndex) {
+				pageIndex = c >>> 8;
+				page = t.getPage(pageIndex, paint);
+			}
+			float advance = page[c & 0xff];
+			if (advance < 0)
+				return getShapedWidths(text, start, end, widths);
+			widths[i - start] = advance;
+			width += advance;
+		}
+		return width;
+	}
+
+	private float getShapedWidths(CharSequence text, int start, int end, float[] widths) {
+		paint.getTextWidths(text, start, end, widths);
+		float width = 0;
+		for (int i = 0; i < end - start; i++)
+			width += widths[i];
+		return width;
+	}
+
+	/**
+	 * A measurer with the current style of paint, which later changes of paint
+	 * don't affect, and which can be used from several threads at once, e.g.
+	 * in a LayoutRequest. Each thread measures with its own copy of the paint.
+	 */
+	public static WidthMeasurer snapshot(TextPaint paint) {
+		return new Snapshot(paint);
+	}
+
+	/**
+	 * Drops every cached advance table, e.g. after the fonts have changed.
+	 */
+	public static void clearTables() {
+		synchronized (tables) {
+			tables.clear();
+		}
+	}
+
+	/**
+	 * Whether the advance of c can't be measured in isolation.
+	 */
+	static boolean needsShaping(char c) {
+		if (c < 0x0300)
+			return false;
+		switch (Character.getType(c)) {
+		case Character.NON_SPACING_MARK:
+		case Character.ENCLOSING_MARK:
+		case Character.COMBINING_SPACING_MARK:
+		case Character.FORMAT:
+		case Character.SURROGATE:
+			return true;
+		}
+		return (c >= 0x0590 && c <= 0x109f) // Hebrew, Arabic ... Indic, Thai, Lao, Tibetan, Myanmar
+				|| (c >= 0x1780 && c <= 0x17ff) // Khmer
+				|| (c >= 0xfb1d && c <= 0xfdff) // Hebrew and Arabic presentation forms
+				|| (c >= 0xfe70 && c <= 0xfeff); // Arabic presentation forms-B
+	}
+
+	/**
+	 * Advances of a single style, split in pages of 256 characters which are
+	 * measured lazily with a single getTextWidths() call each. Negative
+	 * advances mark characters which need shaping.
+	 */
+	private static class AdvanceTable {
+		private static final String PROBE = "AV To Wa ffi fl";
+
+		final boolean additive;
+		private final AtomicReferenceArray<float[]> pages = new AtomicReferenceArray<float[]>(256);
+
+		AdvanceTable(Paint paint) {
+			float[] widths = new float[PROBE.length()];
+			paint.getTextWidths(PROBE, widths);
+			float sum = 0;
+			for (float w : widths)
+				sum += w;
+			// kerning or ligatures make the width of a run differ from the sum of its advances
+			additive = Math.abs(paint.measureText(PROBE) - sum) < 0.5f;
+		}
+
+		float[] getPage(int index, Paint paint) {
+			float[] page = pages.get(index);
+			if (page == null) {
+				char[] chars = new char[256];
+				for (int i = 0; i < 256; i++)
+					chars[i] = (char) ((index << 8) | i);
+				page = new float[256];
+				paint.getTextWidths(chars, 0, 256, page);
+				for (int i = 0; i < 256; i++) {
+					if (needsShaping(chars[i]))
+						page[i] = -1;
+				}
+				pages.set(index, page);
+			}
+			return page;
+		}
+	}
+
+	private static class Snapshot implements WidthMeasurer {
+		private final TextPaint paint;
+		private final StyleKey styleKey;
+		private final ThreadLocal<PaintWidthMeasurer> measurers = new ThreadLocal<PaintWidthMeasurer>() {
+			@Override
+			protected PaintWidthMeasurer initialValue() {
+				TextPaint copy = new TextPaint();
+				copy.set(paint);
+				return new PaintWidthMeasurer(copy);
+			}
+		};
+
+		Snapshot(TextPaint paint) {
+			this.paint = new TextPaint();
+			this.paint.set(paint);
+			this.styleKey = new PaintWidthMeasurer(this.paint).getStyleKey();
+		}
+
+		@Override
+		public float measureText(CharSequence text, int start, int end) {
+			return measurers.get().measureText(text, start, end);
+		}
+
+		@Override
+		public float getTextWidths(CharSequence text, int start, int end, float[] widths) {
+			return measurers.get().getTextWidths(text, start, end, widths);
+		}
+
+		@Override
+		public StyleKey getStyleKey() {
+			return styleKey;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+/**
+ * Immutable result of breaking a text ahead of time, typically on a
+ * background thread, together with the text, style and width profile it was
+ * computed for. TextBreaker adopts it only if they match its own, otherwise
+ * it breaks the text again.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class PrecomputedLayout {
+	private final LayoutCache.Key key;
+	private final TextLayout layout;
+
+	PrecomputedLayout(LayoutCache.Key key, TextLayout layout) {
+		this.key = key.copy();
+		// bound to the immutable copy of the text
+		this.layout = layout.withText(this.key.getText());
+	}
+
+	public CharSequence getText() {
+		return layout.getText();
+	}
+
+	public TextLayout getLayout() {
+		return layout;
+	}
+
+	boolean matches(LayoutCache.Key key) {
+		return this.key.equals(key);
+	}
+}
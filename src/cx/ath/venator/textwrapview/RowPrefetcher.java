@@ -0,0 +1,294 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+/**
+ * Prepares the rows of a list before they scroll into view. Fed with the
+ * visible range at every scroll, it guesses which rows come next from the
+ * direction and speed of the scroll and, whenever the main thread is idle,
+ * has them prefetched on a small pool of low priority threads, nearest rows
+ * first. Rows behind a reversed scroll are cancelled.
+ * 
+ * Prefetching a row means filling the caches the views look into when they
+ * are bound: breaking its texts with a LayoutTemplate goes through the
+ * LayoutCache used by onMeasure(), and BitmapLoader.prefetch() decodes its
+ * thumbnail into the ThumbnailCache. Memory is bounded by the size of those
+ * caches and by setMaxRows(), which should stay well below the number of rows
+ * they can hold.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class RowPrefetcher {
+	private static final String TAG = "RowPrefetcher";
+	private static final int DEFAULT_THREADS = 2;
+	private static final int DEFAULT_MAX_ROWS = 8;
+	// how far ahead of the scroll rows are prefetched
+	private static final long LOOKAHEAD_MILLIS = 300;
+	// a scroll which didn't move for longer has stopped
+	private static final long STOP_MILLIS = 200;
+
+	public interface Rows {
+		public int getCount();
+
+		/**
+		 * Called on a prefetch thread: computes the layouts and thumbnails the
+		 * row at position will need, e.g. with LayoutTemplate.compute() and
+		 * BitmapLoader.prefetch(). Should return early when the thread is
+		 * interrupted, which happens when the row is not needed anymore.
+		 */
+		public void prefetch(int position);
+	}
+
+	private final Rows rows;
+	private final ThreadPoolExecutor executor;
+	private int maxRows = DEFAULT_MAX_ROWS;
+
+	// main thread only
+	private final SparseArray<Task> pending = new SparseArray<Task>();
+	private int firstVisible = -1, visibleCount;
+	private long lastMoveTime;
+	private float velocity; // rows per second
+	private int direction, queuedDirection;
+	private boolean idleScheduled;
+	private int sequence;
+
+	// positions prefetched since they entered the window, guarded by this
+	private final SparseBooleanArray prefetched = new SparseBooleanArray();
+
+	public RowPrefetcher(Rows rows) {
+		this(rows, DEFAULT_THREADS);
+	}
+
+	public RowPrefetcher(Rows rows, int threads) {
+		this.rows = rows;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private int count;
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, TAG + " #" + (++count));
+						t.setDaemon(true);
+						t.setPriority(Thread.MIN_PRIORITY);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Sets how many rows at most are prefetched ahead of the visible ones.
+	 */
+	public void setMaxRows(int maxRows) {
+		if (maxRows < 0)
+			throw new IllegalArgumentException("maxRows < 0");
+		this.maxRows = maxRows;
+		scheduleIdle();
+	}
+
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	/**
+	 * Reports the visible rows, from the main thread, e.g. from
+	 * AbsListView.OnScrollListener.onScroll().
+	 */
+	public void onScroll(int firstVisible, int visibleCount) {
+		long now = SystemClock.uptimeMillis();
+		if (this.firstVisible >= 0 && firstVisible != this.firstVisible) {
+			int delta = firstVisible - this.firstVisible;
+			long dt = Math.max(1, now - lastMoveTime);
+			float instant = delta * 1000f / dt;
+			// a new scroll, or a reversed one, doesn't inherit the old speed
+			velocity = (delta > 0) == (direction > 0) && now - lastMoveTime < STOP_MILLIS ? (velocity + instant) / 2 : instant;
+			direction = delta > 0 ? 1 : -1;
+			lastMoveTime = now;
+		} else if (this.firstVisible < 0) {
+			lastMoveTime = now;
+		}
+		this.firstVisible = firstVisible;
+		this.visibleCount = visibleCount;
+		scheduleIdle();
+	}
+
+	/**
+	 * Forgets every prefetched row and cancels the pending ones, to be called
+	 * when the rows change.
+	 */
+	public void notifyDataSetChanged() {
+		cancelAll();
+		synchronized (this) {
+			prefetched.clear();
+		}
+		scheduleIdle();
+	}
+
+	/**
+	 * Cancels the pending rows and stops the prefetch threads.
+	 */
+	public void shutdown() {
+		cancelAll();
+		executor.shutdownNow();
+	}
+
+	private void cancelAll() {
+		for (int i = 0; i < pending.size(); i++)
+			pending.valueAt(i).cancel(true);
+		pending.clear();
+	}
+
+	private void scheduleIdle() {
+		if (!idleScheduled && firstVisible >= 0 && !executor.isShutdown()) {
+			idleScheduled = true;
+			Looper.myQueue().addIdleHandler(idleHandler);
+		}
+	}
+
+	private final MessageQueue.IdleHandler idleHandler = new MessageQueue.IdleHandler() {
+		@Override
+		public boolean queueIdle() {
+			idleScheduled = false;
+			if (!executor.isShutdown())
+				schedule();
+			return false;
+		}
+	};
+
+	/**
+	 * Cancels the rows which left the prefetch window and submits the new ones.
+	 */
+	private void schedule() {
+		if (SystemClock.uptimeMillis() - lastMoveTime > STOP_MILLIS) {
+			velocity = 0;
+			direction = 0;
+		}
+		int ahead = Math.min(maxRows, Math.max(visibleCount, (int) Math.ceil(Math.abs(velocity) * LOOKAHEAD_MILLIS / 1000)));
+		// standing still, either way is as likely
+		int behind = direction == 0 ? ahead / 2 : 0;
+		int lastVisible = firstVisible + visibleCount - 1;
+		int from, to;
+		if (direction >= 0) {
+			from = firstVisible - behind;
+			to = lastVisible + ahead;
+		} else {
+			from = firstVisible - ahead;
+			to = lastVisible + behind;
+		}
+		from = Math.max(0, from);
+		to = Math.min(rows.getCount() - 1, to);
+
+		// queued priorities only hold for one direction, the rows queued before a stop are still wanted
+		boolean reset = direction != 0 && queuedDirection != 0 && direction != queuedDirection;
+		if (direction != 0)
+			queuedDirection = direction;
+		for (int i = pending.size() - 1; i >= 0; i--) {
+			int position = pending.keyAt(i);
+			if (reset || position < from || position > to) {
+				pending.valueAt(i).cancel(true);
+				pending.removeAt(i);
+			}
+		}
+
+		synchronized (this) {
+			for (int i = prefetched.size() - 1; i >= 0; i--) {
+				int position = prefetched.keyAt(i);
+				if (position < from || position > to)
+					prefetched.delete(position);
+			}
+		}
+
+		for (int position = from; position <= to; position++) {
+			if (position >= firstVisible && position <= lastVisible)
+				continue;
+			if (pending.get(position) != null || isPrefetched(position))
+				continue;
+			Task task = new Task(position, getPriority(position, lastVisible), sequence++);
+			pending.put(position, task);
+			executor.execute(task);
+		}
+	}
+
+	/**
+	 * Lower is sooner. While scrolling the rows ahead are ordered by position,
+	 * which keeps the order of the queued ones valid as the list moves on.
+	 */
+	private int getPriority(int position, int lastVisible) {
+		if (direction > 0)
+			return position;
+		if (direction < 0)
+			return -position;
+		return position < firstVisible ? firstVisible - position : position - lastVisible;
+	}
+
+	private synchronized boolean isPrefetched(int position) {
+		return prefetched.get(position);
+	}
+
+	private synchronized void setPrefetched(int position) {
+		prefetched.put(position, true);
+	}
+
+	private final class Task extends FutureTask<Void> implements Comparable<Task> {
+		private final int position, priority, sequence;
+
+		Task(final int position, int priority, int sequence) {
+			super(new Runnable() {
+				@Override
+				public void run() {
+					rows.prefetch(position);
+				}
+			}, null);
+			this.position = position;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run() {
+			super.run();
+			if (isCancelled())
+				return;
+			try {
+				get();
+				setPrefetched(position);
+			} catch (Exception e) {
+				Log.w(TAG, "Cannot prefetch row " + position, e);
+			}
+			// the entry in pending is removed on the main thread, at the next schedule
+		}
+
+		@Override
+		public int compareTo(Task other) {
+			if (priority != other.priority)
+				return priority < other.priority ? -1 : 1;
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import java.util.WeakHashMap;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * The horizontal extent of the opaque pixels of each row of an image, as
+ * drawn at a given size, so that text can follow its outline instead of its
+ * bounding box. Rows are queried by range, for the rows a line of text
+ * spans. Profiles computed from a bitmap are cached with it.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class SpanProfile {
+	// pixels more transparent than this don't push text away
+	private static final int ALPHA_THRESHOLD = 0x20;
+
+	// the last profile computed for each bitmap
+	private static final WeakHashMap<Bitmap, SpanProfile> cache = new WeakHashMap<Bitmap, SpanProfile>();
+
+	private final int width, height;
+	// opaque columns [lefts[y], rights[y]) of each row y, null for a rectangle
+	private final int[] lefts, rights;
+	// what the profile was computed from
+	private final Rect src;
+
+	private SpanProfile(int width, int height, int[] lefts, int[] rights, Rect src) {
+		this.width = width;
+		this.height = height;
+		this.lefts = lefts;
+		this.rights = rights;
+		this.src = src;
+	}
+
+	/**
+	 * A fully opaque width x height image.
+	 */
+	public static SpanProfile rectangle(int width, int height) {
+		return new SpanProfile(width, height, null, null, null);
+	}
+
+	/**
+	 * The profile of the region src of bitmap, scaled to width x height, as
+	 * drawn by Canvas.drawBitmap(bitmap, src, dst, paint). A bitmap without
+	 * alpha is a rectangle. Reads each row of the region once, the result is
+	 * cached until the bitmap is garbage collected or profiled at another
+	 * size.
+	 */
+	public static SpanProfile fromBitmap(Bitmap bitmap, Rect src, int width, int height) {
+		if (!bitmap.hasAlpha())
+			return rectangle(width, height);
+		synchronized (cache) {
+			SpanProfile cached = cache.get(bitmap);
+			if (cached != null && cached.width == width && cached.height == height && cached.src.equals(src))
+				return cached;
+		}
+
+		int srcWidth = src.width(), srcHeight = src.height();
+		int[] lefts = new int[height], rights = new int[height];
+		int[] row = new int[srcWidth];
+		int lastSrcRow = -1;
+		for (int y = 0; y < height; y++) {
+			int sy = src.top + (int) ((long) y * srcHeight / height);
+			if (sy != lastSrcRow) {
+				bitmap.getPixels(row, 0, srcWidth, src.left, sy, srcWidth, 1);
+				lastSrcRow = sy;
+			}
+			int first = 0;
+			while (first < srcWidth && (row[first] >>> 24) < ALPHA_THRESHOLD)
+				first++;
+			int last = srcWidth;
+			while (last > first && (row[last - 1] >>> 24) < ALPHA_THRESHOLD)
+				last--;
+			if (first == last) {
+				// transparent row
+				lefts[y] = Integer.MAX_VALUE;
+				rights[y] = Integer.MIN_VALUE;
+			} else {
+				lefts[y] = (int) ((long) first * width / srcWidth);
+				rights[y] = (int) (((long) last * width + srcWidth - 1) / srcWidth);
+			}
+		}
+
+		SpanProfile profile = new SpanProfile(width, height, lefts, rights, new Rect(src));
+		synchronized (cache) {
+			cache.put(bitmap, profile);
+		}
+		return profile;
+	}
+
+	/**
+	 * Whether this is rectangle(width, height).
+	 */
+	boolean isRectangle(int width, int height) {
+		return lefts == null && this.width == width && this.height == height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * The leftmost opaque column of the rows [top, bottom),
+	 * Integer.MAX_VALUE if they are all transparent or out of the image.
+	 */
+	public int getLeft(int top, int bottom) {
+		top = Math.max(top, 0);
+		bottom = Math.min(bottom, height);
+		if (top >= bottom)
+			return Integer.MAX_VALUE;
+		if (lefts == null)
+			return 0;
+		int left = Integer.MAX_VALUE;
+		for (int y = top; y < bottom; y++)
+			left = Math.min(left, lefts[y]);
+		return left;
+	}
+
+	/**
+	 * The column after the rightmost opaque one of the rows [top, bottom),
+	 * Integer.MIN_VALUE if they are all transparent or out of the image.
+	 */
+	public int getRight(int top, int bottom) {
+		top = Math.max(top, 0);
+		bottom = Math.min(bottom, height);
+		if (top >= bottom)
+			return Integer.MIN_VALUE;
+		if (rights == null)
+			return width;
+		int right = Integer.MIN_VALUE;
+		for (int y = top; y < bottom; y++)
+			right = Math.max(right, rights[y]);
+		return right;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof SpanProfile))
+			return false;
+		SpanProfile p = (SpanProfile) o;
+		// rows are compared by identity, they are shared by the cached profiles
+		return width == p.width && height == p.height && lefts == p.lefts && rights == p.rights;
+	}
+
+	@Override
+	public int hashCode() {
+		return (width * 31 + height) * 31 + System.identityHashCode(lefts);
+	}
+}
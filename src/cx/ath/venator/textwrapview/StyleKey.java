@@ -0,0 +1,96 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+/**
+ * Immutable snapshot of the paint attributes which affect text width:
+ * typeface, size, horizontal scale, skew and width-related flags.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class StyleKey {
+	private final Object typeface;
+	private final float textSize;
+	private final float textScaleX;
+	private final float textSkewX;
+	private final int flags;
+	private final int hash;
+
+	public StyleKey(Object typeface, float textSize, float textScaleX, float textSkewX, int flags) {
+		this.typeface = typeface;
+		this.textSize = textSize;
+		this.textScaleX = textScaleX;
+		this.textSkewX = textSkewX;
+		this.flags = flags;
+
+		int h = typeface != null ? typeface.hashCode() : 0;
+		h = 31 * h + Float.floatToIntBits(textSize);
+		h = 31 * h + Float.floatToIntBits(textScaleX);
+		h = 31 * h + Float.floatToIntBits(textSkewX);
+		h = 31 * h + flags;
+		this.hash = h;
+	}
+
+	public Object getTypeface() {
+		return typeface;
+	}
+
+	public float getTextSize() {
+		return textSize;
+	}
+
+	public float getTextScaleX() {
+		return textScaleX;
+	}
+
+	public float getTextSkewX() {
+		return textSkewX;
+	}
+
+	public int getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Same as equals(new StyleKey(...)), without allocating a key.
+	 */
+	public boolean matches(Object typeface, float textSize, float textScaleX, float textSkewX, int flags) {
+		return (this.typeface == typeface || (this.typeface != null && this.typeface.equals(typeface)))
+				&& this.textSize == textSize && this.textScaleX == textScaleX
+				&& this.textSkewX == textSkewX && this.flags == flags;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof StyleKey))
+			return false;
+		StyleKey k = (StyleKey) o;
+		return hash == k.hash && matches(k.typeface, k.textSize, k.textScaleX, k.textSkewX, k.flags);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "StyleKey[" + typeface + ", " + textSize + "px, scaleX=" + textScaleX + ", skewX=" + textSkewX
+				+ ", flags=0x" + Integer.toHexString(flags) + "]";
+	}
+}
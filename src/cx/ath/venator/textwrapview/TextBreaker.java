@@ -16,21 +16,104 @@
 package cx.ath.venator.textwrapview;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.StringTokenizer;
-
-import android.text.TextPaint;
 
 /**
  * Breaks an input string in multiple chunks given their size in pixels.
  * 
+ * Lines are stored as start/end offsets into the input text, together with
+ * their measured width, in arrays which are reused across calls to
+ * breakText(), so breaking allocates nothing once the arrays are big enough.
+ * A text which doesn't fit is truncated at its end, start or middle: only
+ * one line holds the ellipsis, the last one when truncated at the end.
+ * 
+ * A TextBreaker must be confined to a thread; LayoutEngine breaks texts from
+ * any thread with a breaker per thread.
+ * 
  * @author Alessio Bianchi (venator85)
  * @author Text breaking algorithm by Andrea Gambitta
  */
 public class TextBreaker {
-	private List<String> mLines;
+	public static final String ELLIPSIS = "...";
+	public static final String HYPHEN = "-";
+
+	/** Fills each line with as many words as possible. */
+	public static final int BREAK_STRATEGY_GREEDY = 0;
+	/** Uses as many lines as greedy breaking, but makes them as even as possible. */
+	public static final int BREAK_STRATEGY_BALANCED = 1;
+
+	/** Truncates the text after the last line which fits. */
+	public static final int ELLIPSIZE_END = 0;
+	/** Keeps the end of the text, truncating its start. */
+	public static final int ELLIPSIZE_START = 1;
+	/** Keeps the start and the end of the text, truncating its middle. */
+	public static final int ELLIPSIZE_MIDDLE = 2;
+	// characters measured at once while looking for the ends of a text which fit the lines
+	private static final int FITTING_CHUNK = 32;
+
 	private int[] maxWidths;
 	private int maxWidth, maxLines;
+	private LineGeometry geometry;
+	// the width of the last line asked to geometry
+	private int geometryLine = -1, geometryWidth;
+	private int breakStrategy = BREAK_STRATEGY_GREEDY;
+	private Hyphenator hyphenator;
+
+	private CharSequence text;
+	private int lineCount;
+	private int[] lineStarts = new int[8];
+	private int[] lineEnds = new int[8];
+	private float[] lineWidths = new float[8];
+	private boolean[] lineHyphens = new boolean[8];
+	private float[] prefix = new float[32];
+	// for each character measured in prefix when eliding, the index of the next '\n' at or after it
+	private int[] nextNewline = new int[32];
+	// words of the paragraph being balanced
+	private int wordCount;
+	private int[] wordStarts = new int[16];
+	private int[] wordEnds = new int[16];
+	private float[] wordWidths = new float[16];
+	// the text stops before its end, with an ellipsis if ellipsize is set
+	private boolean ellipsized;
+	private float ellipsisWidth;
+	private boolean ellipsize = true;
+	private String ellipsis = ELLIPSIS;
+	private int ellipsizeMode = ELLIPSIZE_END;
+	// truncated at the start or middle: the ellipsis line, the text it replaces and where it is drawn
+	private int elisionLine = -1, elisionStart, elisionEnd;
+	private float elisionX;
+	// where the lines start, and where the text left out starts if ellipsized
+	private int startOffset, resumeOffset;
+	private float hyphenWidth;
+	private float width;
+	private List<String> mLines;
+
+	private LayoutCache layoutCache;
+	private LayoutSnapshotCache snapshotCache;
+	// the layout the current lines were adopted from, returned by getLayout()
+	private TextLayout adopted;
+	private final LayoutCache.Key cacheKey = new LayoutCache.Key();
+
+	// inputs of the current lines, to skip breaking the same text again
+	private StyleKey brokenStyle;
+	private int brokenMaxWidth, brokenMaxLines, brokenStartOffset;
+	private boolean brokenEllipsize;
+	private int[] brokenMaxWidths;
+	private int[] brokenMaxWidthsBuffer = new int[0];
+	private LineGeometry brokenGeometry;
+
+	// lines of each paragraph of the last text, when incremental
+	private HashMap<Paragraph, Paragraph> paragraphs;
+	private final Paragraph probe = new Paragraph();
+	private StyleKey paragraphStyle;
+	private int generation;
+
+	// objects and arrays allocated while breaking, for LayoutMetrics
+	private int allocations;
+	// incremented whenever the lines may have changed
+	private int version;
 
 	public int[] getMaxWidths() {
 		return maxWidths;
@@ -48,98 +131,1213 @@ public class TextBreaker {
 		this.maxWidths = maxWidths;
 		this.maxLines = maxWidths.length;
 		this.maxWidth = -1;
+		this.geometry = null;
 	}
 
 	public void setMaxWidthLines(int maxWidth, int maxLines) {
 		this.maxWidth = maxWidth;
 		this.maxLines = maxLines;
 		this.maxWidths = null;
+		this.geometry = null;
+	}
+
+	public LineGeometry getLineGeometry() {
+		return geometry;
 	}
 
-	private int getLineWidth(int i) {
-		if (maxWidths != null)
-			return maxWidths[i];
+	/**
+	 * Takes the width and the number of lines from geometry, e.g. for text
+	 * flowing around an image. Lines are not broken again while the geometry
+	 * stays equal.
+	 */
+	public void setLineGeometry(LineGeometry geometry) {
+		this.geometry = geometry;
+		this.geometryLine = -1;
+		this.maxLines = geometry.getLineCount();
+		this.maxWidth = -1;
+		this.maxWidths = null;
+	}
+
+	/**
+	 * Sets one of the BREAK_STRATEGY_* constants. Paragraphs which need an
+	 * ellipsis or hard wrapping are always broken greedily.
+	 */
+	public void setBreakStrategy(int breakStrategy) {
+		if (breakStrategy != BREAK_STRATEGY_GREEDY && breakStrategy != BREAK_STRATEGY_BALANCED)
+			throw new IllegalArgumentException("Unknown break strategy " + breakStrategy);
+		if (breakStrategy != this.breakStrategy) {
+			this.breakStrategy = breakStrategy;
+			brokenStyle = null;
+			if (paragraphs != null)
+				paragraphs.clear();
+		}
+	}
+
+	public int getBreakStrategy() {
+		return breakStrategy;
+	}
+
+	/**
+	 * Enables breaking words which don't fit a line at their hyphenation
+	 * points, null disables hyphenation. Only greedy breaking hyphenates.
+	 */
+	public void setHyphenator(Hyphenator hyphenator) {
+		if (hyphenator != this.hyphenator) {
+			this.hyphenator = hyphenator;
+			brokenStyle = null;
+			if (paragraphs != null)
+				paragraphs.clear();
+		}
+	}
+
+	public Hyphenator getHyphenator() {
+		return hyphenator;
+	}
+
+	int getAvailableWidth(int line) {
+		if (geometry != null) {
+			// the same line is asked for at every word
+			if (line != geometryLine) {
+				geometryWidth = geometry.getWidth(line);
+				geometryLine = line;
+			}
+			return geometryWidth;
+		}
+		else if (maxWidths != null)
+			return maxWidths[line];
 		else
 			return maxWidth;
 	}
 
-	public float breakText(String input, TextPaint tp) {
-		mLines = new ArrayList<String>();
+	/**
+	 * Enables looking up and storing the results of breakText() in the given
+	 * cache, null disables caching.
+	 */
+	public void setLayoutCache(LayoutCache layoutCache) {
+		this.layoutCache = layoutCache;
+	}
+
+	public LayoutCache getLayoutCache() {
+		return layoutCache;
+	}
+
+	/**
+	 * Enables adopting the lines stored on disk by a previous session when
+	 * they aren't in the layout cache, and storing new ones, null disables it.
+	 */
+	public void setSnapshotCache(LayoutSnapshotCache snapshotCache) {
+		this.snapshotCache = snapshotCache;
+	}
+
+	public LayoutSnapshotCache getSnapshotCache() {
+		return snapshotCache;
+	}
+
+	/**
+	 * Enables keeping the lines of every paragraph (text between '\n') of the
+	 * last break, so that the next breakText() only measures the paragraphs
+	 * which changed. Useful for long texts which are edited or appended to.
+	 */
+	public void setIncremental(boolean incremental) {
+		if (incremental && paragraphs == null)
+			paragraphs = new HashMap<Paragraph, Paragraph>();
+		else if (!incremental)
+			paragraphs = null;
+	}
+
+	public boolean isIncremental() {
+		return paragraphs != null;
+	}
+
+	/**
+	 * Disables the ellipsis after the last line when the text doesn't fit,
+	 * so that the last line is as full as the others, e.g. for a region
+	 * followed by another one which goes on with getContinuation().
+	 */
+	public void setEllipsize(boolean ellipsize) {
+		this.ellipsize = ellipsize;
+	}
+
+	public boolean isEllipsize() {
+		return ellipsize;
+	}
+
+	/**
+	 * Sets the string drawn where the text is truncated, e.g. "\u2026".
+	 */
+	public void setEllipsis(String ellipsis) {
+		if (ellipsis == null)
+			throw new NullPointerException("ellipsis == null");
+		if (!ellipsis.equals(this.ellipsis)) {
+			this.ellipsis = ellipsis;
+			brokenStyle = null;
+		}
+	}
+
+	public String getEllipsis() {
+		return ellipsis;
+	}
+
+	/**
+	 * Sets one of the ELLIPSIZE_* constants. START and MIDDLE are meant for
+	 * texts without line breaks such as file paths or IDs: when the text
+	 * doesn't fit, it is wrapped at any character, as much of it is kept as
+	 * fits the lines around the ellipsis, and getContinuation() returns null.
+	 */
+	public void setEllipsizeMode(int ellipsizeMode) {
+		if (ellipsizeMode != ELLIPSIZE_END && ellipsizeMode != ELLIPSIZE_START && ellipsizeMode != ELLIPSIZE_MIDDLE)
+			throw new IllegalArgumentException("Unknown ellipsize mode " + ellipsizeMode);
+		if (ellipsizeMode != this.ellipsizeMode) {
+			this.ellipsizeMode = ellipsizeMode;
+			brokenStyle = null;
+		}
+	}
+
+	public int getEllipsizeMode() {
+		return ellipsizeMode;
+	}
+
+	/**
+	 * Makes the next breaks lay out the text from the given offset instead of
+	 * its start, e.g. from the offset of a continuation. Line offsets are
+	 * still relative to the whole text.
+	 */
+	public void setStartOffset(int startOffset) {
+		if (startOffset < 0)
+			throw new IllegalArgumentException("startOffset < 0");
+		this.startOffset = startOffset;
+	}
+
+	public int getStartOffset() {
+		return startOffset;
+	}
+
+	/**
+	 * Breaks input in lines, returns the width of the widest line (ellipsis
+	 * included). Does nothing if input is the same String, style and width
+	 * profile as in the last call. Other CharSequences are read in place,
+	 * without copies, only up to the end of the last line which fits.
+	 */
+	public float breakText(CharSequence input, WidthMeasurer wm) {
+		StyleKey style = wm.getStyleKey();
+		if (isBroken(input, style))
+			return width;
+
+		// cached layouts start from the beginning of the text, with an ellipsis. Keys hash and copy the
+		// whole text, other CharSequences broken up to maxLines are read only up to the last line instead
+		if ((layoutCache == null && snapshotCache == null) || input == null || maxLines == 0 || startOffset != 0 || !ellipsize
+				|| (maxLines > 0 && !(input instanceof String) && !(input instanceof MappedText))) {
+			breakTextUncached(input, wm);
+		} else {
+			TextLayout cached = null;
+			if (layoutCache != null) {
+				cacheKey.set(input, style, maxWidth, maxLines, maxWidths, geometry, breakStrategy, hyphenator, ellipsis,
+						ellipsizeMode);
+				cached = layoutCache.get(cacheKey);
+			}
+			if (cached == null && snapshotCache != null) {
+				cached = snapshotCache.get(this, input, wm);
+				if (cached != null && layoutCache != null)
+					layoutCache.put(cacheKey, cached);
+			}
+			if (cached != null) {
+				setLayout(cached);
+				text = input;
+			} else {
+				breakTextUncached(input, wm);
+				TextLayout layout = getLayout();
+				if (layoutCache != null) {
+					layoutCache.put(cacheKey, layout);
+					// layout, its arrays and the copy of the key
+					allocations += 5;
+				}
+				if (snapshotCache != null)
+					snapshotCache.put(this, input, wm, layout);
+			}
+		}
+		setBroken(style);
+		return width;
+	}
+
+	/**
+	 * Breaks the text of from starting at its offset, e.g. in the region which
+	 * follows the one whose getContinuation() returned it, with the width
+	 * profile of this breaker. The previous regions are not broken again.
+	 */
+	public float breakText(BreakCursor from, WidthMeasurer wm) {
+		setStartOffset(from.getOffset());
+		return breakText(from.getText(), wm);
+	}
+
+	/**
+	 * Same as breakText(input, wm), but adopts hint instead of measuring if it
+	 * was computed for the same text, style and width profile.
+	 */
+	public float breakText(CharSequence input, WidthMeasurer wm, PrecomputedLayout hint) {
+		StyleKey style = wm.getStyleKey();
+		if (isBroken(input, style))
+			return width;
+		if (hint != null && input != null && startOffset == 0 && ellipsize && hint.matches(cacheKey.set(input, style, maxWidth, maxLines, maxWidths, geometry, breakStrategy, hyphenator, ellipsis, ellipsizeMode))) {
+			setLayout(hint.getLayout());
+			text = input;
+			setBroken(style);
+			return width;
+		}
+		return breakText(input, wm);
+	}
+
+	/**
+	 * Whether the current lines were broken from input with the given style
+	 * and the current width profile.
+	 */
+	private boolean isBroken(CharSequence input, StyleKey style) {
+		// other CharSequences may have been changed in place since
+		if (input != text || (input != null && !(input instanceof String)) || !style.equals(brokenStyle) || maxWidth != brokenMaxWidth || maxLines != brokenMaxLines)
+			return false;
+		if (startOffset != brokenStartOffset || ellipsize != brokenEllipsize)
+			return false;
+		if (geometry == null ? brokenGeometry != null : !geometry.equals(brokenGeometry))
+			return false;
+		if (maxWidths == null)
+			return brokenMaxWidths == null;
+		if (brokenMaxWidths == null)
+			return false;
+		// equal maxLines means equal lengths
+		for (int i = 0; i < maxWidths.length; i++) {
+			if (maxWidths[i] != brokenMaxWidths[i])
+				return false;
+		}
+		return true;
+	}
+
+	private void setBroken(StyleKey style) {
+		version++;
+		brokenStyle = style;
+		brokenMaxWidth = maxWidth;
+		brokenMaxLines = maxLines;
+		brokenStartOffset = startOffset;
+		brokenEllipsize = ellipsize;
+		brokenGeometry = geometry;
+		if (maxWidths == null) {
+			brokenMaxWidths = null;
+		} else {
+			if (brokenMaxWidthsBuffer.length < maxWidths.length) {
+				brokenMaxWidthsBuffer = new int[maxWidths.length];
+				allocations++;
+			}
+			System.arraycopy(maxWidths, 0, brokenMaxWidthsBuffer, 0, maxWidths.length);
+			brokenMaxWidths = brokenMaxWidthsBuffer;
+		}
+	}
+
+	/**
+	 * Breaks input and returns the result in a form which can be handed to
+	 * another TextBreaker, e.g. from a background thread to a view.
+	 */
+	public PrecomputedLayout precompute(CharSequence input, WidthMeasurer wm) {
 		if (input == null)
+			throw new NullPointerException("input == null");
+		breakText(input, wm);
+		cacheKey.set(input, wm.getStyleKey(), maxWidth, maxLines, maxWidths, geometry, breakStrategy, hyphenator, ellipsis,
+				ellipsizeMode);
+		return new PrecomputedLayout(cacheKey, getLayout());
+	}
+
+	private float breakTextUncached(CharSequence input, WidthMeasurer wm) {
+		adopted = null;
+		text = input;
+		lineCount = 0;
+		ellipsized = false;
+		elisionLine = -1;
+		width = 0;
+		mLines = null;
+		if (input == null || maxLines == 0)
 			return 0;
-		StringTokenizer st = new StringTokenizer(input, "\n");
-		float maxWidth = 0;
-		while (st.hasMoreTokens()) {
-			int moreLines = maxLines - mLines.size();
-			if (moreLines == 0)
+		// without ellipsis the last line doesn't need to leave room for it
+		ellipsisWidth = ellipsize ? wm.measureText(ellipsis, 0, ellipsis.length()) : 0;
+		// truncating elsewhere than at the end, the text is first broken as if the lines had no ellipsis
+		boolean elide = ellipsize && ellipsizeMode != ELLIPSIZE_END && maxLines > 0;
+		float truncatedEllipsisWidth = ellipsisWidth;
+		if (elide)
+			ellipsisWidth = 0;
+		hyphenWidth = hyphenator != null ? wm.measureText(HYPHEN, 0, HYPHEN.length()) : 0;
+		if (paragraphs != null) {
+			if (!wm.getStyleKey().equals(paragraphStyle)) {
+				paragraphs.clear();
+				paragraphStyle = wm.getStyleKey();
+			}
+			generation++;
+		}
+
+		// the text is scanned once, up to the last character of the last line
+		int len = input.length();
+		int start = Math.min(startOffset, len);
+		while (start < len && lineCount != maxLines && !ellipsized) {
+			// paragraphs are separated by one or more '\n'
+			while (start < len && input.charAt(start) == '\n')
+				start++;
+			if (start == len)
 				break;
-			String line = st.nextToken();
-			List<String> brokenLine = breakLine(line, tp);
-			for (String l : brokenLine) {
-				maxWidth = Math.max(tp.measureText(l), maxWidth);
+
+			if (paragraphs != null) {
+				// paragraphs are looked up by content, so they must be found first
+				int end = start;
+				while (end < len && input.charAt(end) != '\n')
+					end++;
+				breakParagraphIncremental(input, start, end, wm);
+				start = end;
+			} else {
+				start = breakParagraph(input, start, len, wm);
 			}
-			mLines.addAll(brokenLine);
 		}
-		return maxWidth;
+
+		if (paragraphs != null) {
+			// forget the paragraphs which are not part of this text anymore
+			Iterator<Paragraph> it = paragraphs.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().generation != generation)
+					it.remove();
+			}
+		}
+
+		if (lineCount != 0 && lineCount == maxLines && !ellipsized) {
+			// the line budget is over but more paragraphs follow
+			while (start < len && input.charAt(start) == '\n')
+				start++;
+			if (start < len) {
+				ellipsized = true;
+				resumeOffset = start;
+			}
+		}
+
+		if (elide) {
+			ellipsisWidth = truncatedEllipsisWidth;
+			if (ellipsized) {
+				ellipsized = false;
+				breakElided(input, Math.min(startOffset, len), len, wm);
+			}
+		}
+
+		for (int i = 0; i < lineCount; i++)
+			width = Math.max(width, lineWidths[i] + (hasEllipsis(i) ? ellipsisWidth : 0) + (lineHyphens[i] ? hyphenWidth : 0));
+		return width;
+	}
+
+	/**
+	 * Replaces the lines with the text from start to end truncated at its
+	 * start or middle. Only the characters at both ends which can fit the
+	 * lines are measured, once, into prefix sums of their advances. The
+	 * number of characters kept around the ellipsis is then binary searched,
+	 * each probe wrapping them at any character with binary searches over the
+	 * prefix sums. In the middle the kept head and tail are about as wide.
+	 * The '\n' characters kept end their lines, as between paragraphs.
+	 */
+	private void breakElided(CharSequence input, int start, int end, WidthMeasurer wm) {
+		lineCount = 0;
+		float budget = 0;
+		for (int i = 0; i < maxLines; i++)
+			budget += getAvailableWidth(i);
+		int n = end - start;
+		int headLength = ellipsizeMode == ELLIPSIZE_START ? 0 : getFittingLength(input, start, end, 1, budget, wm);
+		int tailLength = getFittingLength(input, end - 1, start - 1, -1, budget, wm);
+		if (headLength + tailLength >= n) {
+			headLength = n;
+			tailLength = 0;
+		}
+
+		// the prefix sums of the head followed by the tail
+		int length = headLength + tailLength;
+		if (prefix.length < length + 1) {
+			prefix = new float[Math.max(length + 1, prefix.length * 2)];
+			allocations++;
+		}
+		wm.getTextWidths(input, end - tailLength, end, prefix);
+		System.arraycopy(prefix, 0, prefix, headLength, tailLength);
+		wm.getTextWidths(input, start, start + headLength, prefix);
+		if (nextNewline.length < length + 1) {
+			nextNewline = new int[prefix.length];
+			allocations++;
+		}
+		nextNewline[length] = length;
+		for (int i = length - 1; i >= 0; i--) {
+			char c = input.charAt(i < headLength ? start + i : end - length + i);
+			nextNewline[i] = c == '\n' ? i : nextNewline[i + 1];
+		}
+		float sum = 0;
+		for (int i = 0; i < length; i++) {
+			float advance = prefix[i];
+			prefix[i] = sum;
+			sum += advance;
+		}
+		prefix[length] = sum;
+
+		// at least one character is left out, otherwise the ellipsis would replace nothing
+		int lo = 0, hi = Math.min(length, n - 1);
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			int head = getElidedHead(prefix, length, mid);
+			// a head or tail longer than measured would never fit anyway
+			boolean measured = tailLength == 0 || (head <= headLength && mid - head <= tailLength);
+			if (measured && layoutElided(prefix, start, end, length, head, mid - head, false) <= maxLines)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		int head = getElidedHead(prefix, length, lo);
+		layoutElided(prefix, start, end, length, head, lo - head, true);
+	}
+
+	/**
+	 * Number of characters from from towards to (step 1 or -1) which are
+	 * enough to fill budget, plus one per line for the characters wider than
+	 * a whole line. Measures chunks of characters rather than each one.
+	 */
+	private int getFittingLength(CharSequence input, int from, int to, int step, float budget, WidthMeasurer wm) {
+		float sum = 0;
+		int i = from;
+		while (i != to && sum <= budget) {
+			int next = step > 0 ? Math.min(i + FITTING_CHUNK, to) : Math.max(i - FITTING_CHUNK, to);
+			sum += step > 0 ? wm.measureText(input, i, next) : wm.measureText(input, next + 1, i + 1);
+			i = next;
+		}
+		return Math.min(Math.abs(i - from) + maxLines, Math.abs(to - from));
+	}
+
+	/**
+	 * How many of the kept characters come before the ellipsis.
+	 */
+	private int getElidedHead(float[] prefix, int n, int kept) {
+		if (ellipsizeMode == ELLIPSIZE_START)
+			return 0;
+		// the head grows and the tail shrinks with h, find the first head at least as wide as its tail
+		int lo = 0, hi = kept;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (prefix[mid] >= prefix[n] - prefix[n - kept + mid])
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		if (lo > 0 && prefix[n] - prefix[n - kept + lo - 1] - prefix[lo - 1] < prefix[lo] - prefix[n] + prefix[n - kept + lo])
+			lo--;
+		return lo;
+	}
+
+	/**
+	 * Wraps the first head and the last tail of the n characters measured in
+	 * prefix around the ellipsis, returns the number of lines needed, or more
+	 * than maxLines as soon as they don't fit. Adds the lines if emit is
+	 * true: the head starts at start, the tail ends at end. Lines also end
+	 * at the '\n' characters, which are left out of them.
+	 */
+	private int layoutElided(float[] prefix, int start, int end, int n, int head, int tail, boolean emit) {
+		// offset in the text of the tail character at index i of prefix
+		int tailOffset = end - n;
+		int line = 0;
+		int pos = skipNewlines(0, head);
+		while (true) {
+			if (line == maxLines)
+				return maxLines + 1;
+			int stop = Math.min(nextNewline[pos], head);
+			int j = fit(prefix, pos, pos, stop, 0, getAvailableWidth(line));
+			if (j == head)
+				break;
+			if (j == pos) {
+				// not even a single character fits, put it alone on its line
+				j++;
+			}
+			if (emit)
+				addLine(start + pos, start + j, prefix[j] - prefix[pos]);
+			line++;
+			pos = j == stop ? skipNewlines(j, head) : j;
+		}
+
+		// the ellipsis follows the rest of the head, on the next line if it doesn't fit
+		float x = prefix[head] - prefix[pos];
+		if (x > 0 && x + ellipsisWidth > getAvailableWidth(line)) {
+			if (emit)
+				addLine(start + pos, start + head, x);
+			line++;
+			if (line == maxLines)
+				return maxLines + 1;
+			pos = head;
+			x = 0;
+		}
+		int tailStart = n - tail;
+		int stop = Math.min(nextNewline[tailStart], n);
+		int j = fit(prefix, tailStart, tailStart, stop, x + ellipsisWidth, getAvailableWidth(line));
+		if (emit) {
+			addLine(start + pos, tailOffset + j, x + prefix[j] - prefix[tailStart]);
+			elisionLine = line;
+			elisionStart = start + head;
+			elisionEnd = tailOffset + tailStart;
+			elisionX = x;
+		}
+		line++;
+		pos = j == stop ? skipNewlines(j, n) : j;
+
+		while (pos < n) {
+			if (line == maxLines)
+				return maxLines + 1;
+			stop = Math.min(nextNewline[pos], n);
+			j = fit(prefix, pos, pos, stop, 0, getAvailableWidth(line));
+			if (j == pos)
+				j++;
+			if (emit)
+				addLine(tailOffset + pos, tailOffset + j, prefix[j] - prefix[pos]);
+			line++;
+			pos = j == stop ? skipNewlines(j, n) : j;
+		}
+		return line;
+	}
+
+	/**
+	 * The first of the characters measured for eliding from pos to limit
+	 * which is not a '\n', or limit.
+	 */
+	private int skipNewlines(int pos, int limit) {
+		while (pos < limit && nextNewline[pos] == pos)
+			pos++;
+		return pos;
+	}
+
+	private void breakParagraphIncremental(CharSequence input, int start, int end, WidthMeasurer wm) {
+		Paragraph p = paragraphs.get(probe.set(input, start, end));
+		if (p != null && p.fits(this, lineCount)) {
+			ensureCapacity(lineCount + p.lineCount);
+			for (int i = 0; i < p.lineCount; i++) {
+				lineStarts[lineCount] = start + p.starts[i];
+				lineEnds[lineCount] = start + p.ends[i];
+				lineWidths[lineCount] = p.widths[i];
+				lineHyphens[lineCount] = p.hyphens[i];
+				lineCount++;
+			}
+			p.generation = generation;
+			return;
+		}
+
+		int firstLine = lineCount;
+		breakParagraph(input, start, end, wm);
+		if (!ellipsized && (maxLines < 0 || lineCount < maxLines)) {
+			if (p != null)
+				paragraphs.remove(p);
+			p = new Paragraph(input, start, end, this, firstLine);
+			// paragraph, its text and arrays
+			allocations += 7;
+			p.generation = generation;
+			paragraphs.put(p, p);
+		}
 	}
 
-	private List<String> breakLine(String input, TextPaint tp) {
-		List<String> lines = new ArrayList<String>();
-		if (maxLines == 0)
-			return lines;
-		boolean lastLines = (maxLines == 1);
-		String line = "", DOTS = "...";
+	/**
+	 * Breaks the paragraph starting at start, which ends at the first '\n'
+	 * or at limit, and returns its end. Stops at the word which doesn't fit
+	 * the last line, in which case the end is not known and ellipsized is set.
+	 */
+	private int breakParagraph(CharSequence input, int start, int limit, WidthMeasurer wm) {
+		if (breakStrategy == BREAK_STRATEGY_BALANCED) {
+			int end = breakBalanced(input, start, limit, wm);
+			if (end >= 0)
+				return end;
+		}
+
+		boolean lastLines = (lineCount == maxLines - 1);
+		float spaceWidth = wm.measureText(" ", 0, 1);
 
-		for (String word : input.split(" ")) {
-			if (tp.measureText(line + (!line.equals("") ? " " : "") + word + (lastLines ? DOTS : "")) <= getLineWidth(lines.size())) {
+		// the current line is [lineStart, lineEnd), empty if they match
+		int lineStart = start, lineEnd = start;
+		float lineWidth = 0;
+
+		// words are separated by single spaces, trailing spaces are ignored
+		int wordStart = start;
+		// end of the spaces which follow the last word scanned
+		int spacesEnd = start;
+		while (true) {
+			int wordEnd = wordStart;
+			char c;
+			while (wordEnd < limit && (c = input.charAt(wordEnd)) != ' ' && c != '\n')
+				wordEnd++;
+			boolean lastWord = false;
+			if (wordEnd >= spacesEnd) {
+				// the word is the last one if only spaces follow it
+				spacesEnd = wordEnd;
+				while (spacesEnd < limit && input.charAt(spacesEnd) == ' ')
+					spacesEnd++;
+				lastWord = spacesEnd == limit || input.charAt(spacesEnd) == '\n';
+				if (lastWord && wordEnd == start) {
+					// blank paragraph
+					return spacesEnd;
+				}
+			}
+			float wordWidth = wm.measureText(input, wordStart, wordEnd);
+			boolean emptyLine = lineStart == lineEnd;
+			float sep = !emptyLine ? spaceWidth : 0;
+
+			long hyphens;
+			if (hyphenator != null && !lastLines && lineWidth + sep + wordWidth > getAvailableWidth(lineCount)
+					&& (hyphens = hyphenator.hyphenate(input, wordStart, wordEnd)) != 0) {
+				// put as much of the word as possible on each line, up to a hyphenation point,
+				// then lay out the rest [from, n) as a word
+				float[] prefix = measurePrefix(input, wordStart, wordEnd, wm);
+				int n = wordEnd - wordStart;
+				int from = 0;
+				while (!lastLines) {
+					int available = getAvailableWidth(lineCount);
+					float rest = prefix[n] - prefix[from];
+					if (lineWidth + sep + rest <= available)
+						break;
+					int p = from;
+					for (long bits = hyphens; bits != 0; bits &= bits - 1) {
+						int q = Long.numberOfTrailingZeros(bits);
+						if (q >= n || lineWidth + sep + prefix[q] - prefix[from] + hyphenWidth > available)
+							break;
+						if (q > from)
+							p = q;
+					}
+					if (p > from) {
+						addLine(emptyLine ? wordStart + from : lineStart, wordStart + p, lineWidth + sep + prefix[p] - prefix[from]);
+						lineHyphens[lineCount - 1] = true;
+						from = p;
+					} else if (!emptyLine && rest > available) {
+						// no room left on this line, hyphenate the word from the next one
+						addLine(lineStart, lineEnd, lineWidth);
+					} else {
+						// moved to the next line or hard wrapped as usual
+						break;
+					}
+					lastLines = (lineCount == maxLines - 1);
+					lineStart = lineEnd = wordStart + from;
+					lineWidth = 0;
+					sep = 0;
+					emptyLine = true;
+				}
+				wordStart += from;
+				wordWidth = prefix[n] - prefix[from];
+			}
+
+			if (lineWidth + sep + wordWidth + (lastLines ? ellipsisWidth : 0) <= getAvailableWidth(lineCount)) {
 				// word fits line, append it
-				line += (!line.equals("") ? " " : "") + word;
-			} else if (lastLines) {
+				if (emptyLine)
+					lineStart = wordStart;
+				lineEnd = wordEnd;
+				lineWidth += sep + wordWidth;
+			} else if (lastLines && !(emptyLine && !ellipsize)) {
 				// word doesn't fit and it's the last line
-				line += DOTS;
-				break;
-			} else if (tp.measureText(word) <= getLineWidth(lines.size())) {
+				addLine(lineStart, lineEnd, lineWidth);
+				ellipsized = true;
+				resumeOffset = wordStart;
+				return wordStart;
+			} else if (wordWidth <= getAvailableWidth(lineCount)) {
 				// word doesn't fit, use it in the next line
-				lines.add(line);
-				lastLines = (lines.size() == maxLines - 1);
-				line = word;
+				addLine(lineStart, lineEnd, lineWidth);
+				lastLines = (lineCount == maxLines - 1);
+				lineStart = wordStart;
+				lineEnd = wordEnd;
+				lineWidth = wordWidth;
 			} else {
-				// word doesn't fit but is too large for entire next line, hard word-wrap it
-				int j = word.length();
-				while (tp.measureText(line + " " + word.substring(0, j)) > getLineWidth(lines.size()))
-					j--;
-
-				line += (!line.equals("") ? " " : "") + word.substring(0, j);
-				lines.add(line);
-				lastLines = (lines.size() == maxLines - 1);
+				// word doesn't fit but is too large for entire next line, hard word-wrap it:
+				// measure its characters once, then binary search the split points on their prefix widths
+				float[] prefix = measurePrefix(input, wordStart, wordEnd, wm);
+				int n = wordEnd - wordStart;
+				int j = fit(prefix, 0, 0, n, lineWidth + spaceWidth, getAvailableWidth(lineCount));
 
-				String rest = word.substring(j);
+				if (lastLines) {
+					// an empty last line without ellipsis, the next region goes on with the rest of the word
+					j = Math.max(j, 1);
+					addLine(wordStart, wordStart + j, prefix[j]);
+					ellipsized = true;
+					resumeOffset = wordStart + j;
+					return wordStart + j;
+				}
+				if (emptyLine) {
+					// not even a single character fits, put it alone on its line
+					j = Math.max(j, 1);
+					addLine(wordStart, wordStart + j, prefix[j]);
+				} else if (j == 0) {
+					// no character fits after the space, the word starts the next line
+					addLine(lineStart, lineEnd, lineWidth);
+				} else {
+					addLine(lineStart, wordStart + j, lineWidth + sep + prefix[j]);
+				}
+				lastLines = (lineCount == maxLines - 1);
 
-				while (tp.measureText(rest + (lastLines ? DOTS : "")) > getLineWidth(lines.size())) {
-					j = rest.length();
-					while (tp.measureText(rest.substring(0, j) + (lastLines ? DOTS : "")) > getLineWidth(lines.size())) {
-						j--;
-					}
+				// the rest of the word is [j, n)
+				while (prefix[n] - prefix[j] + (lastLines ? ellipsisWidth : 0) > getAvailableWidth(lineCount)) {
+					int k = fit(prefix, j, j, n, lastLines ? ellipsisWidth : 0, getAvailableWidth(lineCount));
 
 					if (lastLines) {
-						rest = rest.substring(0, j);
-						break;
+						addLine(wordStart + j, wordStart + k, prefix[k] - prefix[j]);
+						ellipsized = true;
+						resumeOffset = wordStart + k;
+						return wordStart + k;
 					} else {
-						lines.add(rest.substring(0, j));
-						lastLines = (lines.size() == maxLines - 1);
-						rest = rest.substring(j);
+						if (k == j) {
+							// not even a single character fits, put it alone on its line
+							k++;
+						}
+						addLine(wordStart + j, wordStart + k, prefix[k] - prefix[j]);
+						lastLines = (lineCount == maxLines - 1);
+						j = k;
 					}
 				}
-				line = rest;
+				lineStart = wordStart + j;
+				lineEnd = wordEnd;
+				lineWidth = prefix[n] - prefix[j];
+			}
+			if (lastWord)
+				break;
+			wordStart = wordEnd + 1;
+		}
+		if (lineEnd != lineStart) {
+			addLine(lineStart, lineEnd, lineWidth);
+		}
+		return spacesEnd;
+	}
+
+	/**
+	 * Breaks the paragraph starting at start in as many lines as
+	 * breakParagraph() would, but as even as possible: the largest amount by
+	 * which every available width can shrink without adding lines is binary
+	 * searched, with a greedy pass over the word widths measured once for
+	 * each probe. Returns the end of the paragraph, or -1 if it needs an
+	 * ellipsis or hard wrapping, which are left to breakParagraph().
+	 */
+	private int breakBalanced(CharSequence input, int start, int limit, WidthMeasurer wm) {
+		float spaceWidth = wm.measureText(" ", 0, 1);
+		// a paragraph wider than the lines left needs an ellipsis, stop measuring it
+		float budget = Float.MAX_VALUE;
+		if (maxLines >= 0) {
+			budget = 0;
+			for (int i = lineCount; i < maxLines; i++)
+				budget += getAvailableWidth(i) + spaceWidth;
+		}
+
+		// same words as breakParagraph()
+		wordCount = 0;
+		float total = 0;
+		int wordStart = start;
+		int spacesEnd = start;
+		while (true) {
+			int wordEnd = wordStart;
+			char c;
+			while (wordEnd < limit && (c = input.charAt(wordEnd)) != ' ' && c != '\n')
+				wordEnd++;
+			boolean lastWord = false;
+			if (wordEnd >= spacesEnd) {
+				spacesEnd = wordEnd;
+				while (spacesEnd < limit && input.charAt(spacesEnd) == ' ')
+					spacesEnd++;
+				lastWord = spacesEnd == limit || input.charAt(spacesEnd) == '\n';
+				if (lastWord && wordEnd == start)
+					return spacesEnd;
+			}
+			float wordWidth = wm.measureText(input, wordStart, wordEnd);
+			addWord(wordStart, wordEnd, wordWidth);
+			total += wordWidth + spaceWidth;
+			if (total > budget)
+				return -1;
+			if (lastWord)
+				break;
+			wordStart = wordEnd + 1;
+		}
+
+		int lines = layoutWords(spaceWidth, 0, -1, false);
+		if (lines < 0)
+			return -1;
+		int shrink = 0;
+		if (lines > 1) {
+			int hi = 0;
+			for (int i = 0; i < lines; i++)
+				hi = Math.max(hi, getAvailableWidth(lineCount + i));
+			while (shrink < hi) {
+				int mid = (shrink + hi + 1) >>> 1;
+				if (layoutWords(spaceWidth, mid, lines, false) >= 0)
+					shrink = mid;
+				else
+					hi = mid - 1;
 			}
 		}
-		if (line.length() != 0) {
-			lines.add(line);
+		layoutWords(spaceWidth, shrink, lines, true);
+		return spacesEnd;
+	}
+
+	private void addWord(int start, int end, float width) {
+		if (wordCount == wordStarts.length) {
+			int capacity = wordCount * 2;
+			int[] starts = new int[capacity];
+			int[] ends = new int[capacity];
+			float[] widths = new float[capacity];
+			System.arraycopy(wordStarts, 0, starts, 0, wordCount);
+			System.arraycopy(wordEnds, 0, ends, 0, wordCount);
+			System.arraycopy(wordWidths, 0, widths, 0, wordCount);
+			wordStarts = starts;
+			wordEnds = ends;
+			wordWidths = widths;
+			allocations += 3;
 		}
-		return lines;
+		wordStarts[wordCount] = start;
+		wordEnds[wordCount] = end;
+		wordWidths[wordCount] = width;
+		wordCount++;
 	}
 
+	/**
+	 * Lays out the words greedily as breakParagraph() does, with every
+	 * available width reduced by shrink. Returns the number of lines, or -1
+	 * if there are more than maxCount (unless negative) or if a word would
+	 * need an ellipsis or hard wrapping. Adds the lines if emit is true.
+	 */
+	private int layoutWords(float spaceWidth, int shrink, int maxCount, boolean emit) {
+		int first = lineCount, line = first;
+		int lineStart = wordStarts[0], lineEnd = lineStart;
+		float lineWidth = 0;
+		for (int i = 0; i < wordCount; i++) {
+			boolean emptyLine = lineStart == lineEnd;
+			float sep = !emptyLine ? spaceWidth : 0;
+			int available = getAvailableWidth(line) - shrink;
+			boolean lastLine = (line == maxLines - 1);
+
+			if (lineWidth + sep + wordWidths[i] + (lastLine ? ellipsisWidth : 0) <= available) {
+				if (emptyLine)
+					lineStart = wordStarts[i];
+				lineEnd = wordEnds[i];
+				lineWidth += sep + wordWidths[i];
+			} else if (lastLine || wordWidths[i] > available) {
+				return -1;
+			} else {
+				if (emit)
+					addLine(lineStart, lineEnd, lineWidth);
+				line++;
+				if (maxCount >= 0 && line - first >= maxCount)
+					return -1;
+				lineStart = wordStarts[i];
+				lineEnd = wordEnds[i];
+				lineWidth = wordWidths[i];
+			}
+		}
+		if (lineEnd != lineStart) {
+			if (emit)
+				addLine(lineStart, lineEnd, lineWidth);
+			line++;
+		}
+		return line - first;
+	}
+
+	/**
+	 * Lines of a single paragraph, relative to its start, together with the
+	 * available width of each line. The same lines can be reused wherever the
+	 * paragraph starts on lines with the same available widths, as long as it
+	 * doesn't reach the last line (where the ellipsis would come into play).
+	 * Instances are both keys and values of TextBreaker.paragraphs; keys are
+	 * compared by content.
+	 */
+	private static final class Paragraph {
+		private CharSequence text;
+		private int start, end, hash;
+
+		int lineCount;
+		int[] starts, ends, available;
+		float[] widths;
+		boolean[] hyphens;
+		int generation;
+
+		Paragraph() {
+		}
+
+		/**
+		 * Copies the lines [firstLine, breaker.lineCount) of breaker, broken
+		 * from text[start, end).
+		 */
+		Paragraph(CharSequence text, int start, int end, TextBreaker breaker, int firstLine) {
+			set(text.subSequence(start, end).toString(), 0, end - start);
+			lineCount = breaker.lineCount - firstLine;
+			starts = new int[lineCount];
+			ends = new int[lineCount];
+			widths = new float[lineCount];
+			hyphens = new boolean[lineCount];
+			available = new int[lineCount];
+			for (int i = 0; i < lineCount; i++) {
+				starts[i] = breaker.lineStarts[firstLine + i] - start;
+				ends[i] = breaker.lineEnds[firstLine + i] - start;
+				widths[i] = breaker.lineWidths[firstLine + i];
+				hyphens[i] = breaker.lineHyphens[firstLine + i];
+				available[i] = breaker.getAvailableWidth(firstLine + i);
+			}
+		}
+
+		Paragraph set(CharSequence text, int start, int end) {
+			this.text = text;
+			this.start = start;
+			this.end = end;
+			int h = 0;
+			for (int i = start; i < end; i++)
+				h = 31 * h + text.charAt(i);
+			this.hash = h;
+			return this;
+		}
+
+		/**
+		 * Whether these lines are valid if the paragraph starts at the given
+		 * line of breaker.
+		 */
+		boolean fits(TextBreaker breaker, int firstLine) {
+			if (breaker.maxLines >= 0 && firstLine + lineCount >= breaker.maxLines)
+				return false;
+			for (int i = 0; i < lineCount; i++) {
+				if (breaker.getAvailableWidth(firstLine + i) != available[i])
+					return false;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Paragraph))
+				return false;
+			Paragraph p = (Paragraph) o;
+			if (hash != p.hash || end - start != p.end - p.start)
+				return false;
+			for (int i = 0; i < end - start; i++) {
+				if (text.charAt(start + i) != p.text.charAt(p.start + i))
+					return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Returns the prefix widths of [start, end): element i is the width of
+	 * the first i characters. The array is reused by the next call.
+	 */
+	private float[] measurePrefix(CharSequence input, int start, int end, WidthMeasurer wm) {
+		int n = end - start;
+		if (prefix.length < n + 1) {
+			prefix = new float[Math.max(n + 1, prefix.length * 2)];
+			allocations++;
+		}
+		wm.getTextWidths(input, start, end, prefix);
+		// turn the advances into prefix sums in place
+		float sum = 0;
+		for (int i = 0; i < n; i++) {
+			float advance = prefix[i];
+			prefix[i] = sum;
+			sum += advance;
+		}
+		prefix[n] = sum;
+		return prefix;
+	}
+
+	/**
+	 * Returns the largest k in [lo, hi] such that the characters [base, k)
+	 * plus extra fit in available, or lo if none does.
+	 */
+	private static int fit(float[] prefix, int base, int lo, int hi, float extra, float available) {
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (prefix[mid] - prefix[base] + extra <= available)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > lineStarts.length) {
+			capacity = Math.max(capacity, lineStarts.length * 2);
+			int[] starts = new int[capacity];
+			int[] ends = new int[capacity];
+			float[] widths = new float[capacity];
+			boolean[] hyphens = new boolean[capacity];
+			System.arraycopy(lineStarts, 0, starts, 0, lineCount);
+			System.arraycopy(lineEnds, 0, ends, 0, lineCount);
+			System.arraycopy(lineWidths, 0, widths, 0, lineCount);
+			System.arraycopy(lineHyphens, 0, hyphens, 0, lineCount);
+			lineStarts = starts;
+			lineEnds = ends;
+			lineWidths = widths;
+			lineHyphens = hyphens;
+			allocations += 4;
+		}
+	}
+
+	private void addLine(int start, int end, float width) {
+		ensureCapacity(lineCount + 1);
+		lineStarts[lineCount] = start;
+		lineEnds[lineCount] = end;
+		lineWidths[lineCount] = width;
+		lineHyphens[lineCount] = false;
+		lineCount++;
+	}
+
+	/**
+	 * Changes whenever the lines may have changed, so that what was drawn
+	 * from them can be reused otherwise.
+	 */
+	int getVersion() {
+		return version;
+	}
+
+	/**
+	 * The number of objects and arrays allocated by the breaks so far.
+	 */
+	int getAllocationCount() {
+		return allocations;
+	}
+
+	/**
+	 * Returns an immutable snapshot of the current lines.
+	 */
+	public TextLayout getLayout() {
+		if (adopted != null)
+			return adopted;
+		return new TextLayout(text, lineCount, lineStarts, lineEnds, lineWidths, lineHyphens, ellipsized && ellipsize,
+				ellipsisWidth, hyphenWidth, width, ellipsized ? resumeOffset : -1, elisionLine, elisionStart, elisionEnd,
+				elisionX);
+	}
+
+	/**
+	 * Replaces the current lines with the ones of layout, as if breakText()
+	 * had just computed them.
+	 */
+	public void setLayout(TextLayout layout) {
+		ensureCapacity(layout.getLineCount());
+		layout.copyTo(lineStarts, lineEnds, lineWidths, lineHyphens);
+		adopted = layout;
+		text = layout.getText();
+		lineCount = layout.getLineCount();
+		ellipsized = layout.getContinuation() >= 0;
+		resumeOffset = layout.getContinuation();
+		ellipsisWidth = layout.getEllipsisWidth();
+		elisionLine = layout.getElisionLine();
+		if (elisionLine >= 0) {
+			elisionStart = layout.getEllipsisStart(elisionLine);
+			elisionEnd = layout.getEllipsisEnd(elisionLine);
+			elisionX = layout.getEllipsisX(elisionLine);
+		}
+		hyphenWidth = layout.getHyphenWidth();
+		width = layout.getWidth();
+		mLines = null;
+		brokenStyle = null;
+		version++;
+	}
+
+	/**
+	 * The text broken by the last call to breakText().
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Offset in getText() of the first character of the given line.
+	 */
+	public int getLineStart(int line) {
+		return lineStarts[line];
+	}
+
+	/**
+	 * Offset in getText() after the last character of the given line.
+	 */
+	public int getLineEnd(int line) {
+		return lineEnds[line];
+	}
+
+	/**
+	 * Width of the text of the given line, ellipsis excluded.
+	 */
+	public float getLineWidth(int line) {
+		return lineWidths[line];
+	}
+
+	/**
+	 * Whether the given line holds getEllipsis(), after its text when the
+	 * text is truncated at its end.
+	 */
+	public boolean hasEllipsis(int line) {
+		return line == elisionLine || (ellipsized && ellipsize && line == lineCount - 1);
+	}
+
+	/**
+	 * Offset of the first character replaced by the ellipsis of the given
+	 * line, the end of the line when truncated at the end.
+	 */
+	public int getEllipsisStart(int line) {
+		return line == elisionLine ? elisionStart : lineEnds[line];
+	}
+
+	/**
+	 * Offset of the character drawn after the ellipsis of the given line,
+	 * the end of the line when nothing follows it.
+	 */
+	public int getEllipsisEnd(int line) {
+		return line == elisionLine ? elisionEnd : lineEnds[line];
+	}
+
+	/**
+	 * Distance from the start of the given line to its ellipsis.
+	 */
+	public float getEllipsisX(int line) {
+		return line == elisionLine ? elisionX : lineWidths[line];
+	}
+
+	/**
+	 * Where the text left out of the lines starts, to be laid out by the
+	 * breaker of the next region with breakText(BreakCursor, wm), or null if
+	 * the whole text fit.
+	 */
+	public BreakCursor getContinuation() {
+		return ellipsized ? new BreakCursor(text, resumeOffset) : null;
+	}
+
+	public float getEllipsisWidth() {
+		return ellipsisWidth;
+	}
+
+	/**
+	 * Whether the given line ends in the middle of a word, to be followed by
+	 * HYPHEN.
+	 */
+	public boolean hasHyphen(int line) {
+		return lineHyphens[line];
+	}
+
+	public float getHyphenWidth() {
+		return hyphenWidth;
+	}
+
+	/**
+	 * Width of the widest line, ellipsis included, as returned by breakText().
+	 */
+	public float getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the lines as strings, ellipsis included. The list is built on
+	 * first access, drawing code should use the offsets instead.
+	 */
 	public List<String> getLines() {
+		if (mLines == null) {
+			mLines = new ArrayList<String>(lineCount);
+			for (int i = 0; i < lineCount; i++) {
+				if (hasEllipsis(i)) {
+					mLines.add(text.subSequence(lineStarts[i], getEllipsisStart(i)) + ellipsis
+							+ text.subSequence(getEllipsisEnd(i), lineEnds[i]));
+				} else {
+					mLines.add(text.subSequence(lineStarts[i], lineEnds[i]).toString());
+				}
+			}
+		}
 		return mLines;
 	}
-}
\ No newline at end of file
+}
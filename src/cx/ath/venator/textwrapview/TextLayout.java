@@ -0,0 +1,214 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+/**
+ * Immutable snapshot of the lines computed by a TextBreaker: start/end
+ * offsets into the text, widths, hyphens and ellipsis. A TextBreaker can adopt it
+ * later through setLayout() without measuring anything.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public final class TextLayout {
+	private final CharSequence text;
+	private final int lineCount;
+	private final int[] lineStarts;
+	private final int[] lineEnds;
+	private final float[] lineWidths;
+	private final boolean[] lineHyphens;
+	private final boolean ellipsized;
+	private final float ellipsisWidth;
+	private final float hyphenWidth;
+	private final float width;
+	private final int continuation;
+	private final int elisionLine, elisionStart, elisionEnd;
+	private final float elisionX;
+
+	TextLayout(CharSequence text, int lineCount, int[] lineStarts, int[] lineEnds, float[] lineWidths,
+			boolean[] lineHyphens, boolean ellipsized, float ellipsisWidth, float hyphenWidth, float width, int continuation) {
+		this(text, lineCount, lineStarts, lineEnds, lineWidths, lineHyphens, ellipsized, ellipsisWidth, hyphenWidth, width,
+				continuation, -1, 0, 0, 0);
+	}
+
+	/**
+	 * The text from elisionStart to elisionEnd is replaced by the ellipsis,
+	 * drawn elisionX from the start of elisionLine, -1 if the text is not
+	 * truncated at its start or middle.
+	 */
+	TextLayout(CharSequence text, int lineCount, int[] lineStarts, int[] lineEnds, float[] lineWidths,
+			boolean[] lineHyphens, boolean ellipsized, float ellipsisWidth, float hyphenWidth, float width, int continuation,
+			int elisionLine, int elisionStart, int elisionEnd, float elisionX) {
+		this.text = text;
+		this.lineCount = lineCount;
+		this.lineStarts = new int[lineCount];
+		this.lineEnds = new int[lineCount];
+		this.lineWidths = new float[lineCount];
+		this.lineHyphens = new boolean[lineCount];
+		System.arraycopy(lineStarts, 0, this.lineStarts, 0, lineCount);
+		System.arraycopy(lineEnds, 0, this.lineEnds, 0, lineCount);
+		System.arraycopy(lineWidths, 0, this.lineWidths, 0, lineCount);
+		System.arraycopy(lineHyphens, 0, this.lineHyphens, 0, lineCount);
+		this.ellipsized = ellipsized;
+		this.ellipsisWidth = ellipsisWidth;
+		this.hyphenWidth = hyphenWidth;
+		this.width = width;
+		this.continuation = continuation;
+		this.elisionLine = elisionLine;
+		this.elisionStart = elisionStart;
+		this.elisionEnd = elisionEnd;
+		this.elisionX = elisionX;
+	}
+
+	/**
+	 * Shares the lines of other, which were computed from a text with the
+	 * same content as text.
+	 */
+	private TextLayout(TextLayout other, CharSequence text) {
+		this.text = text;
+		this.lineCount = other.lineCount;
+		this.lineStarts = other.lineStarts;
+		this.lineEnds = other.lineEnds;
+		this.lineWidths = other.lineWidths;
+		this.lineHyphens = other.lineHyphens;
+		this.ellipsized = other.ellipsized;
+		this.ellipsisWidth = other.ellipsisWidth;
+		this.hyphenWidth = other.hyphenWidth;
+		this.width = other.width;
+		this.continuation = other.continuation;
+		this.elisionLine = other.elisionLine;
+		this.elisionStart = other.elisionStart;
+		this.elisionEnd = other.elisionEnd;
+		this.elisionX = other.elisionX;
+	}
+
+	/**
+	 * This layout for text, which must have the same content as getText(),
+	 * e.g. so that a shared layout doesn't expose the CharSequence of
+	 * whoever computed it, which may have been changed since.
+	 */
+	TextLayout withText(CharSequence text) {
+		return text == this.text ? this : new TextLayout(this, text);
+	}
+
+	public CharSequence getText() {
+		return text;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	public int getLineStart(int line) {
+		return lineStarts[line];
+	}
+
+	public int getLineEnd(int line) {
+		return lineEnds[line];
+	}
+
+	/**
+	 * Width of the text of the given line, ellipsis excluded.
+	 */
+	public float getLineWidth(int line) {
+		return lineWidths[line];
+	}
+
+	public boolean isEllipsized() {
+		return ellipsized || elisionLine >= 0;
+	}
+
+	public boolean hasEllipsis(int line) {
+		return line == elisionLine || (ellipsized && line == lineCount - 1);
+	}
+
+	/**
+	 * The line holding the ellipsis when the text is truncated at its start
+	 * or middle, -1 otherwise.
+	 */
+	public int getElisionLine() {
+		return elisionLine;
+	}
+
+	/**
+	 * Offset of the first character replaced by the ellipsis of the given
+	 * line, the end of the line when truncated at the end.
+	 */
+	public int getEllipsisStart(int line) {
+		return line == elisionLine ? elisionStart : lineEnds[line];
+	}
+
+	/**
+	 * Offset of the character drawn after the ellipsis of the given line,
+	 * the end of the line when nothing follows it.
+	 */
+	public int getEllipsisEnd(int line) {
+		return line == elisionLine ? elisionEnd : lineEnds[line];
+	}
+
+	/**
+	 * Distance from the start of the given line to its ellipsis.
+	 */
+	public float getEllipsisX(int line) {
+		return line == elisionLine ? elisionX : lineWidths[line];
+	}
+
+	public float getEllipsisWidth() {
+		return ellipsisWidth;
+	}
+
+	public boolean hasHyphen(int line) {
+		return lineHyphens[line];
+	}
+
+	public float getHyphenWidth() {
+		return hyphenWidth;
+	}
+
+	/**
+	 * Width of the widest line, ellipsis included.
+	 */
+	public float getWidth() {
+		return width;
+	}
+
+	/**
+	 * Offset of the text left out of the lines, -1 if the whole text fit.
+	 */
+	public int getContinuation() {
+		return continuation;
+	}
+
+	/**
+	 * Approximate heap footprint of this layout, text excluded.
+	 */
+	int getSizeInBytes() {
+		return 92 + lineCount * 13;
+	}
+
+	void copyTo(int[] starts, int[] ends, float[] widths, boolean[] hyphens) {
+		copyTo(starts, ends, widths, hyphens, 0);
+	}
+
+	/**
+	 * Copies the lines to the arrays, starting at index offset.
+	 */
+	void copyTo(int[] starts, int[] ends, float[] widths, boolean[] hyphens, int offset) {
+		System.arraycopy(lineStarts, 0, starts, offset, lineCount);
+		System.arraycopy(lineEnds, 0, ends, offset, lineCount);
+		System.arraycopy(lineWidths, 0, widths, offset, lineCount);
+		System.arraycopy(lineHyphens, 0, hyphens, offset, lineCount);
+	}
+}
@@ -15,16 +15,21 @@
 
 package cx.ath.venator.textwrapview;
 
-import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Paint.Align;
+import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.ViewTreeObserver;
 
 /**
  * Provides a simple TextView-like control which allows us to set a max number
@@ -38,9 +43,21 @@ import android.view.View;
  */
 public class TextWrapView extends View {
 	private TextPaint textPaint;
-	private String text;
+	private WidthMeasurer textMeasurer;
+	private CharSequence text;
 	private int maxLines;
 	private TextBreaker textBreaker;
+	private PrecomputedLayout precomputedLayout;
+	private LayoutStats layoutStats;
+	private final DisplayListCache displayList = new DisplayListCache();
+	// null unless enabled
+	private GlyphPositions textPositions;
+	// null unless virtualized
+	private DocumentLayout document;
+	// the part of the view drawn last when virtualized, in view coordinates
+	private final Rect visibleRect = new Rect();
+	private int drawnTop, drawnBottom;
+	private boolean attached, relayoutPending;
 
 	public TextWrapView(Context context) {
 		super(context);
@@ -51,16 +68,20 @@ public class TextWrapView extends View {
 		maxLines = -1;
 
 		textBreaker = new TextBreaker();
+		textBreaker.setLayoutCache(LayoutCache.getDefault());
+		// long, frequently updated texts only need their changed paragraphs to be broken again
+		textBreaker.setIncremental(true);
 
 		textPaint = new TextPaint();
 		textPaint.setAntiAlias(true);
 		textPaint.setTextSize(14);
 		textPaint.setColor(0xff000000);
 		textPaint.setTextAlign(Align.LEFT);
+		textMeasurer = new PaintWidthMeasurer(textPaint);
 	}
 	
 	private void clearCache() {
-		setDrawingCacheEnabled(false);
+		displayList.invalidate();
 	}
 	
 	public TextWrapView(Context context, AttributeSet attrs) {
@@ -80,6 +101,8 @@ public class TextWrapView extends View {
 		setTextColor(a.getInt(R.styleable.TextWrapView_textColor, 0xff000000));
 
 		setMaxLines(a.getInt(R.styleable.TextWrapView_maxLines, 2));
+
+		setBreakStrategy(a.getInt(R.styleable.TextWrapView_breakStrategy, TextBreaker.BREAK_STRATEGY_GREEDY));
 		
 		int typeface = a.getInt(R.styleable.TextWrapView_typeface, -1);
 		if (typeface == 0)
@@ -94,13 +117,75 @@ public class TextWrapView extends View {
 		a.recycle();
 	}
 
-	public void setText(String text) {
+	public void setText(CharSequence text) {
 		this.text = text;
+		this.precomputedLayout = null;
+		textBreaker.setStartOffset(0);
+		if (document != null)
+			document.setText(text);
 		clearCache();
 		requestLayout();
 		invalidate();
 	}
 
+	/**
+	 * Shows the text left out by the view before this one, from the cursor
+	 * returned by its getContinuation(), so that a text flows through a
+	 * header and a few blocks or columns.
+	 */
+	public void setTextFrom(BreakCursor cursor) {
+		setText(cursor.getText());
+		textBreaker.setStartOffset(cursor.getOffset());
+	}
+
+	/**
+	 * Where the text this view couldn't fit starts, to be passed to
+	 * setTextFrom(BreakCursor) of the next view, or null if it fit. Valid once
+	 * this view has been measured.
+	 */
+	public BreakCursor getContinuation() {
+		return textBreaker.getContinuation();
+	}
+
+	/**
+	 * Sets the text of a PrecomputedLayout computed by a LayoutTemplate of
+	 * this view. The next measure pass adopts it if the style and width still
+	 * match, otherwise it breaks the text as setText() would.
+	 */
+	public void setPrecomputedLayout(PrecomputedLayout layout) {
+		this.text = layout.getText();
+		this.precomputedLayout = layout;
+		textBreaker.setStartOffset(0);
+		if (document != null)
+			document.setText(text);
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Returns a snapshot of the attributes the layout of this view depends on,
+	 * which can be used to break texts for it on a background thread.
+	 */
+	public LayoutTemplate getLayoutTemplate() {
+		return new LayoutTemplate(textPaint, maxLines, textBreaker.getBreakStrategy(), textBreaker.getHyphenator(),
+				textBreaker.getEllipsis(), textBreaker.getEllipsizeMode(), getPaddingLeft() + getPaddingRight());
+	}
+
+	/**
+	 * The metrics of this view recorded by LayoutMetrics, null if it hasn't
+	 * recorded any.
+	 */
+	public LayoutStats getLayoutStats() {
+		return layoutStats;
+	}
+
+	private LayoutStats getOrCreateLayoutStats() {
+		if (layoutStats == null)
+			layoutStats = new LayoutStats();
+		return layoutStats;
+	}
+
 	public void setTextSize(int size) {
 		textPaint.setTextSize(size);
 		clearCache();
@@ -121,6 +206,116 @@ public class TextWrapView extends View {
 		invalidate();
 	}
 	
+	/**
+	 * Disables the ellipsis when the text doesn't fit, for views followed by
+	 * another one which shows the rest of the text, see getContinuation().
+	 */
+	public void setEllipsize(boolean ellipsize) {
+		textBreaker.setEllipsize(ellipsize);
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Sets the string drawn where the text is truncated, e.g. "\u2026".
+	 */
+	public void setEllipsis(String ellipsis) {
+		textBreaker.setEllipsis(ellipsis);
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Sets one of the TextBreaker.ELLIPSIZE_* constants, e.g.
+	 * ELLIPSIZE_MIDDLE to keep both ends of a file path.
+	 */
+	public void setEllipsizeMode(int ellipsizeMode) {
+		textBreaker.setEllipsizeMode(ellipsizeMode);
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Sets one of the TextBreaker.BREAK_STRATEGY_* constants.
+	 */
+	public void setBreakStrategy(int breakStrategy) {
+		textBreaker.setBreakStrategy(breakStrategy);
+		if (document != null)
+			document.setBreakStrategy(breakStrategy);
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Adopts the lines stored in snapshotCache by a previous session instead
+	 * of breaking the text again, and stores the new ones, e.g. to lay out
+	 * the first screen of a feed after a cold start without measuring. Null
+	 * disables it. Virtualized texts are not stored. Snapshots not read ahead
+	 * by the cache are read while measuring, a disk read for StrictMode.
+	 */
+	public void setLayoutSnapshotCache(LayoutSnapshotCache snapshotCache) {
+		textBreaker.setSnapshotCache(snapshotCache);
+	}
+
+	/**
+	 * Enables hyphenation with the patterns of hyphenator, null disables it.
+	 */
+	public void setHyphenator(Hyphenator hyphenator) {
+		textBreaker.setHyphenator(hyphenator);
+		if (document != null)
+			document.setHyphenator(hyphenator);
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Draws the lines from the character positions computed once per layout,
+	 * instead of measuring them at every draw. Fonts with kerning or
+	 * ligatures, which drawText() would apply, may look slightly different.
+	 */
+	public void setUseGlyphPositions(boolean enabled) {
+		textPositions = enabled ? new GlyphPositions() : null;
+		clearCache();
+		invalidate();
+	}
+
+	/**
+	 * Lays out only the paragraphs around the visible part of the view, for
+	 * very long texts shown in a ScrollView. Until every paragraph has been
+	 * broken, the height of the view is estimated from their lengths, and it
+	 * is corrected as they scroll into view. Only applies with no line limit.
+	 */
+	public void setVirtualized(boolean virtualized) {
+		if (virtualized == (document != null))
+			return;
+		if (virtualized) {
+			document = new DocumentLayout();
+			document.setBreakStrategy(textBreaker.getBreakStrategy());
+			document.setHyphenator(textBreaker.getHyphenator());
+			document.setText(text);
+		} else {
+			document = null;
+		}
+		if (attached) {
+			if (virtualized)
+				getViewTreeObserver().addOnScrollChangedListener(scrollListener);
+			else
+				getViewTreeObserver().removeOnScrollChangedListener(scrollListener);
+		}
+		clearCache();
+		requestLayout();
+		invalidate();
+	}
+
+	private boolean isVirtualized() {
+		return document != null && maxLines < 0;
+	}
+
 	public void setTypeface(Typeface typeface) {
 		textPaint.setTypeface(typeface);
 		clearCache();
@@ -128,6 +323,42 @@ public class TextWrapView extends View {
 		invalidate();
 	}
 
+	@Override
+	public void setPadding(int left, int top, int right, int bottom) {
+		super.setPadding(left, top, right, bottom);
+		clearCache();
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		attached = true;
+		// only virtualized views draw less than what is visible
+		if (document != null)
+			getViewTreeObserver().addOnScrollChangedListener(scrollListener);
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		attached = false;
+		if (document != null)
+			getViewTreeObserver().removeOnScrollChangedListener(scrollListener);
+	}
+
+	/**
+	 * Redraws a virtualized view when the scrolling parent shows more than
+	 * what has been drawn.
+	 */
+	private final ViewTreeObserver.OnScrollChangedListener scrollListener = new ViewTreeObserver.OnScrollChangedListener() {
+		@Override
+		public void onScrollChanged() {
+			if (isVirtualized() && getLocalVisibleRect(visibleRect)
+					&& (visibleRect.top < drawnTop || visibleRect.bottom > drawnBottom))
+				invalidate();
+		}
+	};
+
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
 		setMeasuredDimension(measureWidth(widthMeasureSpec), measureHeight(heightMeasureSpec));
@@ -167,7 +398,7 @@ public class TextWrapView extends View {
 			result = specSize;
 		} else {
 			// The lines should already be broken up. Calculate our max desired height for our current mode.
-			int numLines = textBreaker.getLines().size();
+			int numLines = isVirtualized() ? document.getLineCount() : textBreaker.getLineCount();
 			float lineHeight = -textPaint.ascent() + textPaint.descent();
 			result = (int) (numLines * lineHeight + getPaddingTop() + getPaddingBottom());
 
@@ -181,31 +412,189 @@ public class TextWrapView extends View {
 	
 	private int breakWidth(int availableWidth) {
 		int maxW = availableWidth - getPaddingLeft() - getPaddingRight();
+		if (isVirtualized()) {
+			// paragraphs are broken when drawn, the widest line is unknown until then
+			document.setWidth(maxW, textMeasurer);
+			return availableWidth;
+		}
 		textBreaker.setMaxWidthLines(maxW, maxLines);
-		return (int) Math.ceil(textBreaker.breakText(text, textPaint)) + getPaddingLeft() + getPaddingRight();
+		float width;
+		if (LayoutMetrics.sample()) {
+			LayoutMetrics.beginSection("TextWrapView#breakText");
+			width = LayoutMetrics.breakText(this, getOrCreateLayoutStats(), textBreaker, text, textMeasurer, precomputedLayout);
+			LayoutMetrics.endSection();
+		} else {
+			width = textBreaker.breakText(text, textMeasurer, precomputedLayout);
+		}
+		return (int) Math.ceil(width) + getPaddingLeft() + getPaddingRight();
 	}
 	
 	@Override
 	protected void onDraw(Canvas canvas) {
 		super.onDraw(canvas);
-		
-		List<String> lines = textBreaker.getLines();
+		boolean sampled = LayoutMetrics.sample();
+		long start = 0;
+		if (sampled) {
+			LayoutMetrics.beginSection("TextWrapView#onDraw");
+			start = System.nanoTime();
+		}
 
+		if (isVirtualized()) {
+			// a recording of the whole document would be as large as the document
+			drawDocument(canvas);
+		} else if (DisplayListCache.canReplay(canvas)) {
+			// setters invalidate the recording, relayouts change the version of the breaker
+			if (!displayList.isValid(getWidth(), getHeight(), textBreaker.getVersion())) {
+				drawContent(displayList.beginRecording(getWidth(), getHeight(), textBreaker.getVersion()));
+				displayList.endRecording();
+			}
+			displayList.draw(canvas);
+		} else {
+			drawContent(canvas);
+		}
+
+		if (sampled) {
+			LayoutMetrics.recordDraw(this, getOrCreateLayoutStats(), System.nanoTime() - start);
+			LayoutMetrics.endSection();
+		}
+	}
+
+	private void drawContent(Canvas canvas) {
 		float x = getPaddingLeft();
 		float y = getPaddingTop() - textPaint.ascent();
 		
 		float lineHeight = -textPaint.ascent() + textPaint.descent();
+		GlyphPositions positions = textPositions != null && GlyphPositions.canDraw(canvas) ? textPositions : null;
+		if (positions != null)
+			positions.update(textBreaker, textMeasurer);
 		
-		for (int i = 0; i < lines.size(); i++) {
-			// Draw the current line
-			canvas.drawText(lines.get(i), x, y, textPaint);
+		for (int i = 0; i < textBreaker.getLineCount(); i++) {
+			// Draw the current line straight from the source text
+			CharSequence text = textBreaker.getText();
+			int end = textBreaker.getLineEnd(i);
+			boolean ellipsis = textBreaker.hasEllipsis(i);
+			// truncated at the start or middle, the ellipsis replaces text inside the line
+			if (ellipsis && textBreaker.getEllipsisStart(i) < end)
+				canvas.drawText(text, textBreaker.getLineStart(i), textBreaker.getEllipsisStart(i), x, y, textPaint);
+			else if (positions == null || !positions.drawLine(canvas, i, x, y, textPaint))
+				canvas.drawText(text, textBreaker.getLineStart(i), end, x, y, textPaint);
+			if (ellipsis) {
+				float ellipsisX = x + textBreaker.getEllipsisX(i);
+				canvas.drawText(textBreaker.getEllipsis(), ellipsisX, y, textPaint);
+				if (textBreaker.getEllipsisEnd(i) < end)
+					canvas.drawText(text, textBreaker.getEllipsisEnd(i), end, ellipsisX + textBreaker.getEllipsisWidth(), y, textPaint);
+			} else if (textBreaker.hasHyphen(i))
+				canvas.drawText(TextBreaker.HYPHEN, x + textBreaker.getLineWidth(i), y, textPaint);
 			y += lineHeight;
 			if (y > canvas.getHeight()) {
 				break;
 			}
 		}
-		
-		//enable drawing cache, onDraw() won't be called again until invalidate() is invoked
-		setDrawingCacheEnabled(true);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Draws the lines around the visible part of the view, one screen above
+	 * and below it, breaking their paragraphs if needed. Posts a new layout
+	 * if that changed the estimated height, as none can be requested while
+	 * drawing.
+	 */
+	private void drawDocument(Canvas canvas) {
+		if (!getLocalVisibleRect(visibleRect)) {
+			// any part becoming visible triggers a redraw
+			drawnTop = drawnBottom = -1;
+			return;
+		}
+		int margin = visibleRect.height();
+		drawnTop = Math.max(0, visibleRect.top - margin);
+		drawnBottom = visibleRect.bottom + margin;
+		float lineHeight = -textPaint.ascent() + textPaint.descent();
+		float x = getPaddingLeft();
+		int firstLine = Math.max(0, (int) ((drawnTop - getPaddingTop()) / lineHeight));
+		int lastLine = (int) Math.ceil((drawnBottom - getPaddingTop()) / lineHeight);
+		int block = document.getBlockForLine(firstLine);
+		if (block < 0)
+			return;
+		int lineCount = document.getLineCount();
+
+		int line = document.getFirstLine(block);
+		float y = getPaddingTop() - textPaint.ascent() + line * lineHeight;
+		CharSequence text = document.getText();
+		for (; line <= lastLine && document.hasBlock(block); block++) {
+			TextLayout layout = document.getLayout(block, textMeasurer);
+			int start = document.getBlockStart(block);
+			for (int i = 0; i < layout.getLineCount(); i++) {
+				if (line >= firstLine) {
+					canvas.drawText(text, start + layout.getLineStart(i), start + layout.getLineEnd(i), x, y, textPaint);
+					if (layout.hasHyphen(i))
+						canvas.drawText(TextBreaker.HYPHEN, x + layout.getLineWidth(i), y, textPaint);
+				}
+				line++;
+				y += lineHeight;
+			}
+		}
+
+		if (document.getLineCount() != lineCount && !relayoutPending) {
+			relayoutPending = true;
+			post(relayout);
+		}
+	}
+
+	private final Runnable relayout = new Runnable() {
+		@Override
+		public void run() {
+			relayoutPending = false;
+			requestLayout();
+		}
+	};
+
+	/**
+	 * Immutable snapshot of the paint, max lines and horizontal padding of a
+	 * TextWrapView. Unlike the view, it can be used from any thread to compute
+	 * layouts, e.g. while binding the rows of a list.
+	 */
+	public static final class LayoutTemplate {
+		// a snapshot of the paint of the view, safe to measure with from any thread
+		private final WidthMeasurer measurer;
+		private final int maxLines;
+		private final int breakStrategy;
+		private final Hyphenator hyphenator;
+		private final String ellipsis;
+		private final int ellipsizeMode;
+		private final int horizontalPadding;
+
+		LayoutTemplate(TextPaint paint, int maxLines, int breakStrategy, Hyphenator hyphenator, String ellipsis,
+				int ellipsizeMode, int horizontalPadding) {
+			this.measurer = PaintWidthMeasurer.snapshot(paint);
+			this.maxLines = maxLines;
+			this.breakStrategy = breakStrategy;
+			this.hyphenator = hyphenator;
+			this.ellipsis = ellipsis;
+			this.ellipsizeMode = ellipsizeMode;
+			this.horizontalPadding = horizontalPadding;
+		}
+
+		/**
+		 * Breaks text for a view which will be measured with the given width.
+		 */
+		public PrecomputedLayout compute(CharSequence text, int width) {
+			return LayoutEngine.getDefault().precompute(new LayoutRequest.Builder(text, measurer)
+					.setMaxWidthLines(width - horizontalPadding, maxLines).setBreakStrategy(breakStrategy)
+					.setHyphenator(hyphenator).setEllipsis(ellipsis).setEllipsizeMode(ellipsizeMode).build());
+		}
+
+		/**
+		 * Runs compute() on executor. Cancel the returned future when the
+		 * target view is recycled before the result is needed.
+		 */
+		public Future<PrecomputedLayout> submit(final CharSequence text, final int width, Executor executor) {
+			FutureTask<PrecomputedLayout> task = new FutureTask<PrecomputedLayout>(new Callable<PrecomputedLayout>() {
+				@Override
+				public PrecomputedLayout call() {
+					return compute(text, width);
+				}
+			});
+			executor.execute(task);
+			return task;
+		}
+	}
+}
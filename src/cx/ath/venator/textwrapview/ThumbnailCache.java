@@ -0,0 +1,252 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+/**
+ * Process-wide LRU cache of center-cropped thumbnails, keyed by image source
+ * and crop size, so that the same image shown by many views is decoded and
+ * cropped once. Its size is a byte budget.
+ * 
+ * Views acquire() the thumbnails they display and release() them when they
+ * show something else. Evicted thumbnails which nobody displays anymore go
+ * to a BitmapPool, which serves the pixel buffers of later crops.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class ThumbnailCache {
+	// same values as ComponentCallbacks2.TRIM_MEMORY_*, which needs API 14
+	public static final int TRIM_MEMORY_UI_HIDDEN = 20;
+	public static final int TRIM_MEMORY_MODERATE = 60;
+
+	private static final int DEFAULT_MAX_SIZE = 2 * 1024 * 1024;
+	private static ThumbnailCache defaultCache;
+
+	private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	private final BitmapPool pool;
+	private int maxSize;
+	private int size;
+	private int hitCount, missCount, putCount, evictionCount;
+	// thumbnails evicted while still displayed, with their reference count
+	private IdentityHashMap<Bitmap, Integer> evicted;
+
+	public ThumbnailCache(int maxSize, BitmapPool pool) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("maxSize <= 0");
+		this.maxSize = maxSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * The cache shared by every ImageTextWrapView, with a pool half its size.
+	 */
+	public static synchronized ThumbnailCache getDefault() {
+		if (defaultCache == null)
+			defaultCache = new ThumbnailCache(DEFAULT_MAX_SIZE, new BitmapPool(DEFAULT_MAX_SIZE / 2));
+		return defaultCache;
+	}
+
+	public BitmapPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Returns the cached thumbnail and marks it as displayed until release()
+	 * is called, or returns null.
+	 */
+	public synchronized Bitmap acquire(Key key) {
+		Entry entry = map.get(key);
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		entry.refs++;
+		return entry.bitmap;
+	}
+
+	/**
+	 * Adds a thumbnail, already acquired once by the caller. If another one is
+	 * cached under the same key it is returned acquired instead, and the given
+	 * one goes to the pool.
+	 */
+	public synchronized Bitmap putAcquired(Key key, Bitmap bitmap) {
+		Entry entry = map.get(key);
+		if (entry != null) {
+			if (entry.bitmap != bitmap)
+				pool.put(bitmap);
+			entry.refs++;
+			return entry.bitmap;
+		}
+		putCount++;
+		entry = new Entry(bitmap);
+		entry.refs = 1;
+		map.put(key, entry);
+		size += BitmapPool.getByteCount(bitmap);
+		trimToSize(maxSize);
+		return bitmap;
+	}
+
+	/**
+	 * Marks a thumbnail returned by acquire() or putAcquired() as not
+	 * displayed by the caller anymore.
+	 */
+	public synchronized void release(Key key, Bitmap bitmap) {
+		Entry entry = map.get(key);
+		if (entry != null && entry.bitmap == bitmap) {
+			entry.refs--;
+		} else if (evicted != null) {
+			// evicted while displayed, pool it now that its last user is gone
+			Integer refs = evicted.get(bitmap);
+			if (refs != null) {
+				if (refs.intValue() <= 1) {
+					evicted.remove(bitmap);
+					pool.put(bitmap);
+				} else {
+					evicted.put(bitmap, Integer.valueOf(refs.intValue() - 1));
+				}
+			}
+		}
+	}
+
+	public synchronized void trimToSize(int maxSize) {
+		Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Entry eldest = it.next().getValue();
+			it.remove();
+			size -= BitmapPool.getByteCount(eldest.bitmap);
+			evictionCount++;
+			if (eldest.refs <= 0) {
+				pool.put(eldest.bitmap);
+			} else {
+				if (evicted == null)
+					evicted = new IdentityHashMap<Bitmap, Integer>();
+				evicted.put(eldest.bitmap, Integer.valueOf(eldest.refs));
+			}
+		}
+	}
+
+	public synchronized void evictAll() {
+		trimToSize(-1);
+	}
+
+	/**
+	 * Releases memory according to a ComponentCallbacks2 trim level, call from
+	 * Application.onTrimMemory().
+	 */
+	public void trimMemory(int level) {
+		if (level >= TRIM_MEMORY_MODERATE) {
+			evictAll();
+			pool.clear();
+		} else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+			trimToSize(maxSize() / 2);
+			pool.trimToSize(pool.maxSize() / 2);
+		}
+	}
+
+	/**
+	 * Empties cache and pool, call from Application.onLowMemory().
+	 */
+	public void onLowMemory() {
+		trimMemory(TRIM_MEMORY_MODERATE);
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized int maxSize() {
+		return maxSize;
+	}
+
+	public synchronized int hitCount() {
+		return hitCount;
+	}
+
+	public synchronized int missCount() {
+		return missCount;
+	}
+
+	public synchronized int putCount() {
+		return putCount;
+	}
+
+	public synchronized int evictionCount() {
+		return evictionCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		int accesses = hitCount + missCount;
+		int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+		return String.format("ThumbnailCache[size=%d,maxSize=%d,hits=%d,misses=%d,evictions=%d,hitRate=%d%%,poolSize=%d]", size,
+				maxSize, hitCount, missCount, evictionCount, hitPercent, pool.size());
+	}
+
+	private static final class Entry {
+		final Bitmap bitmap;
+		int refs;
+
+		Entry(Bitmap bitmap) {
+			this.bitmap = bitmap;
+		}
+	}
+
+	/**
+	 * Image source and crop size of a thumbnail.
+	 */
+	public static final class Key {
+		private final BitmapSource source;
+		private final int width, height;
+
+		public Key(BitmapSource source, int width, int height) {
+			this.source = source;
+			this.width = width;
+			this.height = height;
+		}
+
+		public BitmapSource getSource() {
+			return source;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return width == k.width && height == k.height && source.equals(k.source);
+		}
+
+		@Override
+		public int hashCode() {
+			return (source.hashCode() * 31 + width) * 31 + height;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+/**
+ * Measures the width in pixels of a run of characters. TextBreaker only talks
+ * to this interface, so the breaking algorithm can be driven either by an
+ * Android TextPaint (see PaintWidthMeasurer) or by a plain JVM model (see
+ * MonospaceWidthMeasurer).
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public interface WidthMeasurer {
+	/**
+	 * Returns the width of the characters of text in the range [start, end).
+	 */
+	public float measureText(CharSequence text, int start, int end);
+
+	/**
+	 * Stores the advance of each character of text in the range [start, end)
+	 * in widths, starting at index 0, and returns their sum.
+	 */
+	public float getTextWidths(CharSequence text, int start, int end, float[] widths);
+
+	/**
+	 * Returns a key identifying the style (typeface, size, etc.) this measurer
+	 * measures with. Two measurers returning equal keys must return the same
+	 * widths for the same text.
+	 */
+	public StyleKey getStyleKey();
+}
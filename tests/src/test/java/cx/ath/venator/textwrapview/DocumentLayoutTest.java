@@ -0,0 +1,120 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Alessio Bianchi (venator85)
+ */
+public class DocumentLayoutTest {
+	private final MonospaceWidthMeasurer measurer = new MonospaceWidthMeasurer(1);
+
+	private static String paragraphs(int count) {
+		Random random = new Random(3);
+		StringBuilder sb = new StringBuilder();
+		for (int p = 0; p < count; p++) {
+			if (p > 0)
+				sb.append(random.nextInt(4) == 0 ? "\n\n" : "\n");
+			int words = 1 + random.nextInt(30);
+			for (int w = 0; w < words; w++) {
+				if (w > 0)
+					sb.append(' ');
+				for (int c = 1 + random.nextInt(9); c > 0; c--)
+					sb.append((char) ('a' + random.nextInt(26)));
+			}
+		}
+		return sb.toString();
+	}
+
+	private DocumentLayout document(String text, int width) {
+		DocumentLayout document = new DocumentLayout();
+		document.setText(text);
+		document.setWidth(width, measurer);
+		return document;
+	}
+
+	@Test
+	public void breaksBlocksLikeTheWholeText() {
+		String text = paragraphs(400);
+		DocumentLayout document = document(text, 30);
+		List<String> lines = new ArrayList<String>();
+		for (int block = 0; document.hasBlock(block); block++) {
+			TextLayout layout = document.getLayout(block, measurer);
+			int start = document.getBlockStart(block);
+			for (int i = 0; i < layout.getLineCount(); i++)
+				lines.add(text.substring(start + layout.getLineStart(i), start + layout.getLineEnd(i)));
+		}
+		assertTrue(document.isExact());
+
+		TextBreaker breaker = new TextBreaker();
+		breaker.setMaxWidthLines(30, -1);
+		breaker.breakText(text, measurer);
+		assertEquals(breaker.getLines(), lines);
+		assertEquals(breaker.getLineCount(), document.getLineCount());
+	}
+
+	@Test
+	public void estimatesLinesUntilEveryBlockIsBroken() {
+		DocumentLayout document = document(paragraphs(400), 30);
+		assertTrue(document.getLineCount() > 0);
+		document.getLayout(document.getBlockForLine(0), measurer);
+		assertFalse(document.isExact());
+	}
+
+	@Test
+	public void findsTheBlockOfALine() {
+		DocumentLayout document = document(paragraphs(400), 30);
+		int blocks = 0;
+		while (document.hasBlock(blocks))
+			document.getLayout(blocks++, measurer);
+		assertTrue(blocks > 2);
+		for (int block = 0; block < blocks; block++) {
+			int first = document.getFirstLine(block);
+			int last = document.getFirstLine(block) + document.getLayout(block, measurer).getLineCount() - 1;
+			assertEquals(block, document.getBlockForLine(first));
+			assertEquals(block, document.getBlockForLine(last));
+		}
+		assertEquals(blocks - 1, document.getBlockForLine(document.getLineCount() + 10));
+	}
+
+	@Test
+	public void forgetsBrokenBlocksWhenTheWidthChanges() {
+		DocumentLayout document = document(paragraphs(10), 30);
+		assertTrue(document.hasBlock(0));
+		document.getLayout(0, measurer);
+		assertTrue(document.isExact());
+		document.setWidth(20, measurer);
+		assertFalse(document.isExact());
+	}
+
+	@Test
+	public void hasNoBlockForAnEmptyText() {
+		DocumentLayout document = document("\n\n", 30);
+		assertEquals(-1, document.getBlockForLine(0));
+		assertEquals(0, document.getLineCount());
+		assertFalse(document.hasBlock(0));
+	}
+}
@@ -0,0 +1,102 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Patterns compiled by HyphenationCompiler and read back by Hyphenator.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class HyphenatorTest {
+	private static final String PATTERNS = "% a few of the English patterns\nhy3ph he2n hena4 hen5at\n1na n2at 1tio 2io o2n\n";
+
+	private HyphenationCompiler compiler;
+
+	@Before
+	public void setUp() throws IOException {
+		compiler = new HyphenationCompiler();
+		compiler.addPatterns(new StringReader(PATTERNS));
+	}
+
+	private Hyphenator load(int minPrefix, int minSuffix) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		compiler.write(out, minPrefix, minSuffix);
+		return Hyphenator.load(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	private static long points(int... indices) {
+		long points = 0;
+		for (int i : indices)
+			points |= 1L << i;
+		return points;
+	}
+
+	@Test
+	public void readsBackWhatWasWritten() throws IOException {
+		Hyphenator loaded = load(2, 3);
+		Hyphenator built = compiler.toHyphenator(2, 3);
+		assertEquals(2, loaded.getMinPrefix());
+		assertEquals(3, loaded.getMinSuffix());
+		assertEquals(built.getFingerprint(), loaded.getFingerprint());
+		assertEquals(points(2, 6), loaded.hyphenate("hyphenation", 0, 11));
+		assertEquals(points(2, 6), built.hyphenate("Hyphenation", 0, 11));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFiles() throws IOException {
+		Hyphenator.load(new ByteArrayInputStream(new byte[] { 'T', 'W', 'L', '2', 0, 0 }));
+	}
+
+	@Test
+	public void honorsTheMinimumPrefixAndSuffix() throws IOException {
+		assertEquals(points(6), load(3, 3).hyphenate("hyphenation", 0, 11));
+		assertEquals(points(2), load(2, 6).hyphenate("hyphenation", 0, 11));
+		assertTrue(load(2, 3).getFingerprint() != load(3, 3).getFingerprint());
+	}
+
+	@Test
+	public void skipsPunctuationAroundWords() throws IOException {
+		Hyphenator hyphenator = load(2, 3);
+		String text = "(hyphenation),";
+		assertEquals(points(3, 7), hyphenator.hyphenate(text, 0, text.length()));
+		assertEquals(0, hyphenator.hyphenate("hyphen4tion", 0, 11));
+		assertEquals(0, hyphenator.hyphenate("hyph", 0, 4));
+	}
+
+	@Test
+	public void hyphenatesLines() throws IOException {
+		TextBreaker breaker = new TextBreaker();
+		breaker.setMaxWidthLines(8, -1);
+		breaker.setHyphenator(load(2, 3));
+		breaker.breakText("a hyphenation", new MonospaceWidthMeasurer(1));
+		assertEquals(Arrays.asList("a hy", "phen", "ation"), breaker.getLines());
+		assertTrue(breaker.hasHyphen(0));
+		assertTrue(breaker.hasHyphen(1));
+	}
+}
@@ -0,0 +1,85 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Alessio Bianchi (venator85)
+ */
+public class LayoutCacheTest {
+	private final MonospaceWidthMeasurer measurer = new MonospaceWidthMeasurer(1);
+
+	private TextLayout layout(String text) {
+		TextBreaker breaker = new TextBreaker();
+		breaker.setMaxWidthLines(10, -1);
+		breaker.breakText(text, measurer);
+		return breaker.getLayout();
+	}
+
+	private LayoutCache.Key key(String text) {
+		return new LayoutCache.Key().set(text, measurer.getStyleKey(), 10, -1, null);
+	}
+
+	@Test
+	public void returnsWhatWasPut() {
+		LayoutCache cache = new LayoutCache(64 * 1024);
+		TextLayout layout = layout("the quick brown fox");
+		cache.put(key("the quick brown fox"), layout);
+		assertSame(layout, cache.get(key("the quick brown fox")));
+		assertNull(cache.get(key("the quick brown dog")));
+		assertEquals(1, cache.hitCount());
+		assertEquals(1, cache.missCount());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsed() {
+		LayoutCache cache = new LayoutCache(16 * 1024);
+		String[] texts = new String[200];
+		for (int i = 0; i < texts.length; i++) {
+			texts[i] = "text number " + i + " of many";
+			cache.put(key(texts[i]), layout(texts[i]));
+			// keep the first one in use
+			assertNotNull(cache.get(key(texts[0])));
+		}
+		assertNotNull(cache.get(key(texts[0])));
+		assertNull(cache.get(key(texts[1])));
+		assertNotNull(cache.get(key(texts[texts.length - 1])));
+		assertTrue(cache.size() <= cache.maxSize());
+	}
+
+	@Test
+	public void rejectsEntriesTooBigForTheCache() {
+		LayoutCache cache = new LayoutCache(16 * 1024);
+		cache.put(key("a short text"), layout("a short text"));
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 4 * 1024)
+			sb.append("a long chat log ");
+		String log = sb.toString();
+		cache.put(key(log), layout(log));
+
+		assertNull(cache.get(key(log)));
+		assertNotNull(cache.get(key("a short text")));
+		assertEquals(1, cache.rejectCount());
+		assertEquals(0, cache.evictionCount());
+	}
+}
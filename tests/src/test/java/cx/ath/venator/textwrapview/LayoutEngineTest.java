@@ -0,0 +1,99 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * @author Alessio Bianchi (venator85)
+ */
+public class LayoutEngineTest {
+	private final MonospaceWidthMeasurer measurer = new MonospaceWidthMeasurer(1);
+
+	private static String paragraphs(int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++)
+			sb.append("paragraph ").append(i).append(" with a few words to break\n");
+		return sb.toString();
+	}
+
+	@Test
+	public void breaksLikeATextBreaker() {
+		LayoutEngine engine = new LayoutEngine(null);
+		String text = paragraphs(20);
+		TextLayout layout = engine.breakText(new LayoutRequest.Builder(text, measurer).setMaxWidthLines(12, 7).build());
+
+		TextBreaker breaker = new TextBreaker();
+		breaker.setMaxWidthLines(12, 7);
+		breaker.breakText(text, measurer);
+		assertLayoutEquals(breaker.getLayout(), layout);
+		assertSame(text, layout.getText());
+	}
+
+	@Test
+	public void breaksParagraphsInParallelLikeATextBreaker() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			LayoutEngine engine = new LayoutEngine(null, executor, 100);
+			String text = paragraphs(100);
+			for (int maxLines : new int[] { -1, 1, 50, 150 }) {
+				TextLayout layout = engine.breakText(new LayoutRequest.Builder(text, measurer).setMaxWidthLines(12, maxLines)
+						.build());
+				TextBreaker breaker = new TextBreaker();
+				breaker.setMaxWidthLines(12, maxLines);
+				breaker.breakText(text, measurer);
+				assertLayoutEquals(breaker.getLayout(), layout);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void returnsLayoutsBoundToTheTextOfTheRequest() {
+		LayoutCache cache = new LayoutCache(64 * 1024);
+		StringBuilder source = new StringBuilder("hello world foo");
+		TextBreaker breaker = new TextBreaker();
+		breaker.setLayoutCache(cache);
+		breaker.setMaxWidthLines(10, -1);
+		breaker.breakText(source, measurer);
+		source.setLength(0);
+
+		LayoutEngine engine = new LayoutEngine(cache);
+		LayoutRequest request = new LayoutRequest.Builder("hello world foo", measurer).setMaxWidthLines(10, -1).build();
+		assertSame(request.getText(), engine.breakText(request).getText());
+		assertSame(request.getText(), engine.precompute(request).getText());
+		assertEquals(1, cache.hitCount());
+	}
+
+	private static void assertLayoutEquals(TextLayout expected, TextLayout actual) {
+		assertEquals(expected.getLineCount(), actual.getLineCount());
+		for (int i = 0; i < expected.getLineCount(); i++) {
+			assertEquals(expected.getLineStart(i), actual.getLineStart(i));
+			assertEquals(expected.getLineEnd(i), actual.getLineEnd(i));
+			assertEquals(expected.getLineWidth(i), actual.getLineWidth(i), 0);
+		}
+		assertEquals(expected.getContinuation(), actual.getContinuation());
+		assertEquals(expected.isEllipsized(), actual.isEllipsized());
+		assertEquals(expected.getWidth(), actual.getWidth(), 0);
+	}
+}
@@ -0,0 +1,213 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Alessio Bianchi (venator85)
+ */
+public class LayoutSnapshotCacheTest {
+	private static final String TEXT = "the quick brown fox jumps over the lazy dog\nand runs away";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final MonospaceWidthMeasurer measurer = new MonospaceWidthMeasurer(1);
+
+	private TextBreaker breaker(LayoutSnapshotCache cache, int width, int maxLines) {
+		TextBreaker breaker = new TextBreaker();
+		breaker.setMaxWidthLines(width, maxLines);
+		breaker.setSnapshotCache(cache);
+		return breaker;
+	}
+
+	/**
+	 * Stores the lines of TEXT in a new cache and returns the only snapshot.
+	 */
+	private File store(TextBreaker breaker) throws Exception {
+		LayoutSnapshotCache cache = new LayoutSnapshotCache(folder.getRoot(), 1 << 20);
+		breaker.setSnapshotCache(cache);
+		breaker.breakText(TEXT, measurer);
+		cache.flush();
+		assertEquals(1, cache.putCount());
+		File[] files = folder.getRoot().listFiles();
+		assertEquals(1, files.length);
+		return files[0];
+	}
+
+	private static void overwrite(File file, long offset, int value) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(offset);
+			raf.writeInt(value);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Asserts that the lines of TEXT are read back by a new cache.
+	 */
+	private void assertStored(TextBreaker expected) throws Exception {
+		LayoutSnapshotCache cache = new LayoutSnapshotCache(folder.getRoot(), 1 << 20);
+		TextBreaker breaker = breaker(cache, 12, -1);
+		breaker.breakText(TEXT, measurer);
+		assertEquals(1, cache.hitCount());
+		assertEquals(expected.getLines(), breaker.getLines());
+	}
+
+	@Test
+	public void readsBackTheLinesOfAPreviousSession() throws Exception {
+		TextBreaker first = breaker(null, 12, -1);
+		store(first);
+
+		LayoutSnapshotCache cache = new LayoutSnapshotCache(folder.getRoot(), 1 << 20);
+		// read ahead
+		cache.flush();
+		TextBreaker second = breaker(cache, 12, -1);
+		second.breakText(TEXT, measurer);
+		assertEquals(1, cache.hitCount());
+		assertEquals(first.getLines(), second.getLines());
+
+		// read from the file
+		TextBreaker third = breaker(cache, 12, -1);
+		third.breakText(TEXT, measurer);
+		assertEquals(2, cache.hitCount());
+		assertEquals(first.getLines(), third.getLines());
+	}
+
+	@Test
+	public void readsBackElidedLines() throws Exception {
+		TextBreaker first = breaker(null, 12, 2);
+		first.setEllipsizeMode(TextBreaker.ELLIPSIZE_MIDDLE);
+		store(first);
+
+		LayoutSnapshotCache cache = new LayoutSnapshotCache(folder.getRoot(), 1 << 20);
+		TextBreaker second = breaker(cache, 12, 2);
+		second.setEllipsizeMode(TextBreaker.ELLIPSIZE_MIDDLE);
+		second.breakText(TEXT, measurer);
+		assertEquals(1, cache.hitCount());
+		TextLayout expected = first.getLayout(), actual = second.getLayout();
+		assertEquals(first.getLines(), second.getLines());
+		assertEquals(expected.getElisionLine(), actual.getElisionLine());
+		int line = expected.getElisionLine();
+		assertTrue(line >= 0);
+		assertEquals(expected.getEllipsisStart(line), actual.getEllipsisStart(line));
+		assertEquals(expected.getEllipsisEnd(line), actual.getEllipsisEnd(line));
+		assertEquals(expected.getEllipsisX(line), actual.getEllipsisX(line), 0);
+	}
+
+	@Test
+	public void ignoresSnapshotsOfOtherWidths() throws Exception {
+		store(breaker(null, 12, -1));
+
+		LayoutSnapshotCache cache = new LayoutSnapshotCache(folder.getRoot(), 1 << 20);
+		breaker(cache, 13, -1).breakText(TEXT, measurer);
+		assertEquals(0, cache.hitCount());
+		assertEquals(1, cache.missCount());
+	}
+
+	@Test
+	public void replacesDamagedSnapshots() throws Exception {
+		TextBreaker first = breaker(null, 12, -1);
+		File file = store(first);
+		// the end of the first line, covered by the CRC only
+		overwrite(file, 4 + 4 + 8 * 4 + 4 + 4, 3);
+
+		LayoutSnapshotCache cache = new LayoutSnapshotCache(folder.getRoot(), 1 << 20);
+		TextBreaker second = breaker(cache, 12, -1);
+		second.breakText(TEXT, measurer);
+		assertEquals(0, cache.hitCount());
+		assertEquals(first.getLines(), second.getLines());
+		// deleted, then stored again from the lines just broken
+		cache.flush();
+		assertEquals(1, cache.putCount());
+		assertStored(first);
+	}
+
+	@Test
+	public void replacesSnapshotsOfAnotherFormat() throws Exception {
+		TextBreaker first = breaker(null, 12, -1);
+		File file = store(first);
+		overwrite(file, 0, LayoutSnapshotCache.MAGIC + 1);
+
+		LayoutSnapshotCache cache = new LayoutSnapshotCache(folder.getRoot(), 1 << 20);
+		// read ahead
+		cache.flush();
+		breaker(cache, 12, -1).breakText(TEXT, measurer);
+		assertEquals(0, cache.hitCount());
+		cache.flush();
+		assertEquals(1, cache.putCount());
+		assertStored(first);
+	}
+
+	@Test
+	public void deletesTheLeastRecentlyUsedSnapshots() throws Exception {
+		File file = store(breaker(null, 12, -1));
+		long length = file.length();
+
+		LayoutSnapshotCache cache = new LayoutSnapshotCache(folder.getRoot(), length * 2);
+		breaker(cache, 13, -1).breakText(TEXT, measurer);
+		breaker(cache, 14, -1).breakText(TEXT, measurer);
+		cache.flush();
+		assertEquals(1, cache.evictionCount());
+		assertFalse(file.exists());
+		assertTrue(cache.size() <= length * 2);
+	}
+
+	@Test
+	public void readsBackMappedTextsWithoutCountingTheirChars() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20000; i++)
+			sb.append("the quick brown fox jumps over the lazy dog\n");
+		File file = folder.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(sb.toString().getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		File directory = folder.newFolder();
+
+		LayoutSnapshotCache cache = new LayoutSnapshotCache(directory, 1 << 20);
+		MappedText text = MappedText.open(file);
+		TextBreaker first = breaker(cache, 12, 3);
+		first.breakText(text, measurer);
+		cache.flush();
+		assertEquals(1, cache.putCount());
+
+		cache = new LayoutSnapshotCache(directory, 1 << 20);
+		text = MappedText.open(file);
+		TextBreaker second = breaker(cache, 12, 3);
+		second.breakText(text, measurer);
+		assertEquals(1, cache.hitCount());
+		assertEquals(first.getLines(), second.getLines());
+		assertFalse(text.isLengthKnown());
+	}
+}
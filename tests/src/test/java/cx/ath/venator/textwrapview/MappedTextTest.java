@@ -0,0 +1,125 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+
+package cx.ath.venator.textwrapview;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Alessio Bianchi (venator85)
+ */
+public class MappedTextTest {
+	// one, two, three and four UTF-8 bytes
+	private static final String[] PIECES = { "a", " ", "\n", "\u00e9", "\u0416", "\u4e00", "\ud83d\ude00" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String randomText(int pieces) {
+		Random random = new Random(7);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < pieces; i++)
+			sb.append(PIECES[random.nextInt(PIECES.length)]);
+		return sb.toString();
+	}
+
+	private File write(byte[] bytes) throws IOException {
+		File file = folder.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private MappedText map(String text) throws IOException {
+		return MappedText.open(write(text.getBytes("UTF-8")));
+	}
+
+	@Test
+	public void readsLikeTheDecodedString() throws IOException {
+		// several windows and checkpoints long
+		String text = randomText(30000);
+		MappedText mapped = map(text);
+		Random random = new Random(11);
+		for (int i = 0; i < 2000; i++) {
+			int index = random.nextInt(text.length());
+			assertEquals(text.charAt(index), mapped.charAt(index));
+		}
+		assertEquals(text.length(), mapped.length());
+		for (int i = 0; i < 200; i++) {
+			int start = random.nextInt(text.length());
+			int end = start + random.nextInt(Math.min(20000, text.length() - start));
+			assertEquals(text.substring(start, end), mapped.subSequence(start, end).toString());
+		}
+		assertEquals(text, mapped.toString());
+	}
+
+	@Test
+	public void findsNewlinesLikeTheDecodedString() throws IOException {
+		String text = randomText(30000);
+		MappedText mapped = map(text);
+		for (int from = 0; from < text.length(); from += 97)
+			assertEquals(text.indexOf('\n', from), mapped.indexOfNewline(from));
+		assertEquals(-1, map("no newline").indexOfNewline(0));
+	}
+
+	@Test
+	public void skipsTheByteOrderMark() throws IOException {
+		MappedText mapped = MappedText.open(write(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a', 'b' }));
+		assertEquals("ab", mapped.toString());
+		assertEquals(2, mapped.getByteLength());
+	}
+
+	@Test
+	public void readsMalformedBytesAsReplacementChars() throws IOException {
+		MappedText mapped = MappedText.open(write(new byte[] { 'a', (byte) 0xC3, 'b' }));
+		assertEquals("a\ufffdb", mapped.toString());
+	}
+
+	@Test
+	public void breaksLikeTheDecodedString() throws IOException {
+		String text = randomText(20000);
+		MappedText mapped = map(text);
+		MonospaceWidthMeasurer measurer = new MonospaceWidthMeasurer(1);
+		TextBreaker breaker = new TextBreaker();
+		breaker.setMaxWidthLines(40, 100);
+		breaker.breakText(text, measurer);
+		TextBreaker mappedBreaker = new TextBreaker();
+		mappedBreaker.setMaxWidthLines(40, 100);
+		mappedBreaker.breakText(mapped, measurer);
+		assertEquals(breaker.getLines(), mappedBreaker.getLines());
+	}
+
+	@Test
+	public void equalsTheMappingOfTheSameFile() throws IOException {
+		File file = write("same file".getBytes("UTF-8"));
+		MappedText a = MappedText.open(file), b = MappedText.open(file);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+	}
+}
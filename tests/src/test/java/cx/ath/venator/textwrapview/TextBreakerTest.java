@@ -0,0 +1,322 @@
+/***
+	Copyright (c) 2008-2009 Alessio Bianchi (venator85)
+	Portions (c) 2009 Google, Inc.
+	
+	Licensed under the Apache License, Version 2.0 (the "License"); you may
+	not use this file except in compliance with the License. You may obtain
+	a copy of the License at
+		http://www.apache.org/licenses/LICENSE-2.0
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package cx.ath.venator.textwrapview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Line breaking of TextBreaker with a monospace font one pixel wide, so that
+ * widths are numbers of characters.
+ * 
+ * @author Alessio Bianchi (venator85)
+ */
+public class TextBreakerTest {
+	private MonospaceWidthMeasurer measurer;
+	private TextBreaker breaker;
+
+	@Before
+	public void setUp() {
+		measurer = new MonospaceWidthMeasurer(1);
+		breaker = new TextBreaker();
+	}
+
+	@Test
+	public void fillsLinesGreedily() {
+		breaker.setMaxWidthLines(10, -1);
+		breaker.breakText("the quick brown fox jumps over", measurer);
+		assertEquals(Arrays.asList("the quick", "brown fox", "jumps over"), breaker.getLines());
+		assertEquals(10, breaker.getWidth(), 0);
+		assertNull(breaker.getContinuation());
+	}
+
+	@Test
+	public void keepsLineOffsetsIntoTheText() {
+		String text = "aaa bbb\nccc";
+		breaker.setMaxWidthLines(5, -1);
+		breaker.breakText(text, measurer);
+		assertEquals(3, breaker.getLineCount());
+		assertEquals(0, breaker.getLineStart(0));
+		assertEquals(3, breaker.getLineEnd(0));
+		assertEquals(4, breaker.getLineStart(1));
+		assertEquals(7, breaker.getLineEnd(1));
+		assertEquals(8, breaker.getLineStart(2));
+		assertEquals(11, breaker.getLineEnd(2));
+		assertEquals(3, breaker.getLineWidth(2), 0);
+	}
+
+	@Test
+	public void ellipsizesTheLastLine() {
+		breaker.setMaxWidthLines(10, 2);
+		breaker.breakText("the quick brown fox jumps over", measurer);
+		assertEquals(2, breaker.getLineCount());
+		assertTrue(breaker.hasEllipsis(1));
+		assertFalse(breaker.hasEllipsis(0));
+		assertEquals(Arrays.asList("the quick", "brown..."), breaker.getLines());
+		BreakCursor continuation = breaker.getContinuation();
+		assertNotNull(continuation);
+		assertEquals(16, continuation.getOffset());
+	}
+
+	@Test
+	public void continuesFromACursor() {
+		String text = "the quick brown fox jumps over";
+		breaker.setEllipsize(false);
+		breaker.setMaxWidthLines(10, 2);
+		breaker.breakText(text, measurer);
+		assertEquals(Arrays.asList("the quick", "brown fox"), breaker.getLines());
+
+		TextBreaker next = new TextBreaker();
+		next.setMaxWidthLines(10, -1);
+		next.breakText(breaker.getContinuation(), measurer);
+		assertEquals(Arrays.asList("jumps over"), next.getLines());
+	}
+
+	@Test
+	public void hardWrapsLongWords() {
+		breaker.setMaxWidthLines(4, -1);
+		breaker.breakText("ab cdefghij", measurer);
+		assertEquals(Arrays.asList("ab c", "defg", "hij"), breaker.getLines());
+	}
+
+	@Test
+	public void startsALongWordOnTheNextLineWhenOnlyTheSpaceFits() {
+		breaker.setMaxWidthLines(5, -1);
+		breaker.breakText("duc k lckvls", measurer);
+		assertEquals(Arrays.asList("duc k", "lckvl", "s"), breaker.getLines());
+		for (int i = 0; i < breaker.getLineCount(); i++)
+			assertTrue(breaker.getLineWidth(i) <= 5);
+	}
+
+	@Test
+	public void takesWidthsPerLine() {
+		breaker.setMaxWidths(new int[] { 5, 11 });
+		breaker.breakText("aaa bbb ccc", measurer);
+		assertEquals(Arrays.asList("aaa", "bbb ccc"), breaker.getLines());
+	}
+
+	@Test
+	public void skipsBreakingTheSameString() {
+		String text = "the quick brown fox";
+		breaker.setMaxWidthLines(10, -1);
+		breaker.breakText(text, measurer);
+		int version = breaker.getVersion();
+		breaker.breakText(text, measurer);
+		assertEquals(version, breaker.getVersion());
+		breaker.setMaxWidthLines(5, -1);
+		breaker.breakText(text, measurer);
+		assertTrue(breaker.getVersion() != version);
+	}
+
+	@Test
+	public void adoptsPrecomputedLayouts() {
+		String text = "the quick brown fox jumps over";
+		breaker.setMaxWidthLines(10, 2);
+		PrecomputedLayout precomputed = breaker.precompute(text, measurer);
+
+		TextBreaker other = new TextBreaker();
+		other.setMaxWidthLines(10, 2);
+		other.breakText(text, measurer, precomputed);
+		assertEquals(breaker.getLines(), other.getLines());
+		assertEquals(0, other.getAllocationCount());
+	}
+
+	@Test
+	public void doesNotShareMutableTextsThroughTheCache() {
+		LayoutCache cache = new LayoutCache(64 * 1024);
+		StringBuilder source = new StringBuilder("hello world foo");
+		breaker.setLayoutCache(cache);
+		breaker.setMaxWidthLines(10, -1);
+		breaker.breakText(source, measurer);
+		source.setLength(0);
+		source.append("changed in place");
+
+		TextBreaker other = new TextBreaker();
+		other.setLayoutCache(cache);
+		other.setMaxWidthLines(10, -1);
+		PrecomputedLayout precomputed = other.precompute("hello world foo", measurer);
+		assertEquals(1, cache.hitCount());
+		assertEquals("hello world foo", precomputed.getText().toString());
+		assertEquals("hello world foo", other.getLayout().getText().toString());
+		assertEquals(Arrays.asList("hello", "world foo"), other.getLines());
+	}
+
+	@Test
+	public void bindsPrecomputedLayoutsToACopyOfTheText() {
+		StringBuilder source = new StringBuilder("hello world foo");
+		breaker.setMaxWidthLines(10, -1);
+		PrecomputedLayout precomputed = breaker.precompute(source, measurer);
+		source.setLength(0);
+		assertEquals("hello world foo", precomputed.getText().toString());
+	}
+
+	@Test
+	public void readsLimitedBuildersOnlyUpToTheLastLine() {
+		LayoutCache cache = new LayoutCache(64 * 1024);
+		StringBuilder source = new StringBuilder("the quick brown fox jumps over");
+		for (int i = 0; i < 1000; i++)
+			source.append(" the lazy dog");
+		breaker.setLayoutCache(cache);
+		breaker.setMaxWidthLines(10, 2);
+		breaker.breakText(source, measurer);
+		assertEquals(Arrays.asList("the quick", "brown..."), breaker.getLines());
+		// neither hashed nor copied for a key
+		assertEquals(0, cache.missCount());
+		assertEquals(0, cache.putCount());
+	}
+
+	/**
+	 * The lines of the breaker, the text left out replaced by the ellipsis.
+	 */
+	private List<String> getVisibleLines(String text) {
+		TextLayout layout = breaker.getLayout();
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < layout.getLineCount(); i++) {
+			if (i == layout.getElisionLine())
+				lines.add(text.substring(layout.getLineStart(i), layout.getEllipsisStart(i)) + breaker.getEllipsis()
+						+ text.substring(layout.getEllipsisEnd(i), layout.getLineEnd(i)));
+			else
+				lines.add(text.substring(layout.getLineStart(i), layout.getLineEnd(i)));
+		}
+		return lines;
+	}
+
+	@Test
+	public void truncatesAtTheStart() {
+		String text = "the quick brown fox jumps over";
+		breaker.setMaxWidthLines(12, 1);
+		breaker.setEllipsizeMode(TextBreaker.ELLIPSIZE_START);
+		breaker.setEllipsis("...");
+		breaker.breakText(text, measurer);
+		assertEquals(Arrays.asList("...umps over"), getVisibleLines(text));
+		assertNull(breaker.getContinuation());
+	}
+
+	@Test
+	public void truncatesInTheMiddle() {
+		String text = "the quick brown fox jumps over";
+		breaker.setMaxWidthLines(12, 1);
+		breaker.setEllipsizeMode(TextBreaker.ELLIPSIZE_MIDDLE);
+		breaker.setEllipsis("...");
+		breaker.breakText(text, measurer);
+		assertEquals(Arrays.asList("the q...over"), getVisibleLines(text));
+	}
+
+	@Test
+	public void endsTruncatedLinesAtNewlines() {
+		String text = "first para\nsecond para\n\nthird para,  here\nfourth para";
+		breaker.setMaxWidthLines(12, 2);
+		breaker.setEllipsizeMode(TextBreaker.ELLIPSIZE_START);
+		breaker.setEllipsis("...");
+		breaker.breakText(text, measurer);
+		assertEquals(Arrays.asList("...ra,  here", "fourth para"), getVisibleLines(text));
+
+		breaker.setMaxWidthLines(12, 3);
+		breaker.setEllipsizeMode(TextBreaker.ELLIPSIZE_MIDDLE);
+		breaker.breakText(text, measurer);
+		assertEquals(Arrays.asList("first para", "secon...here", "fourth para"), getVisibleLines(text));
+	}
+
+	@Test
+	public void balancesTheLinesOfParagraphs() {
+		breaker.setMaxWidthLines(12, -1);
+		breaker.setBreakStrategy(TextBreaker.BREAK_STRATEGY_BALANCED);
+		breaker.breakText("aaa bb cc ddddd\naaaa bbb cc dddddd e", measurer);
+		assertEquals(Arrays.asList("aaa bb", "cc ddddd", "aaaa bbb cc", "dddddd e"), breaker.getLines());
+	}
+
+	@Test
+	public void balancesWithoutAddingLines() {
+		String text = "the quick brown fox jumps over the lazy dog";
+		for (int width = 6; width <= 20; width++) {
+			breaker.setMaxWidthLines(width, -1);
+			breaker.setBreakStrategy(TextBreaker.BREAK_STRATEGY_GREEDY);
+			breaker.breakText(text, measurer);
+			int greedyLines = breaker.getLineCount();
+			breaker.setBreakStrategy(TextBreaker.BREAK_STRATEGY_BALANCED);
+			breaker.breakText(text, measurer);
+			assertEquals(greedyLines, breaker.getLineCount());
+			for (int i = 0; i < breaker.getLineCount(); i++)
+				assertTrue(breaker.getLineWidth(i) <= width);
+		}
+	}
+
+	/**
+	 * Counts the characters measured.
+	 */
+	private static final class CountingMeasurer extends MonospaceWidthMeasurer {
+		int measured;
+
+		CountingMeasurer() {
+			super(1);
+		}
+
+		@Override
+		public float measureText(CharSequence text, int start, int end) {
+			measured += end - start;
+			return super.measureText(text, start, end);
+		}
+
+		@Override
+		public float getTextWidths(CharSequence text, int start, int end, float[] widths) {
+			measured += end - start;
+			return super.getTextWidths(text, start, end, widths);
+		}
+	}
+
+	@Test
+	public void measuresOnlyTheParagraphsWhichChanged() {
+		String first = "the quick brown fox\njumps over\nthe lazy dog";
+		String second = "the quick brown fox\njumps over\nthe lazy cat and the dog";
+		CountingMeasurer counting = new CountingMeasurer();
+		breaker.setMaxWidthLines(10, -1);
+		breaker.setIncremental(true);
+		breaker.breakText(first, counting);
+		int measured = counting.measured;
+		counting.measured = 0;
+		breaker.breakText(second, counting);
+		assertTrue(counting.measured < measured);
+
+		TextBreaker fresh = new TextBreaker();
+		fresh.setMaxWidthLines(10, -1);
+		fresh.breakText(second, measurer);
+		assertEquals(fresh.getLines(), breaker.getLines());
+		assertEquals(fresh.getLineCount(), breaker.getLineCount());
+		for (int i = 0; i < fresh.getLineCount(); i++)
+			assertEquals(fresh.getLineStart(i), breaker.getLineStart(i));
+	}
+
+	@Test
+	public void measuresAgainWhenTheWidthChanges() {
+		String text = "the quick brown fox\njumps over";
+		breaker.setIncremental(true);
+		breaker.setMaxWidthLines(10, -1);
+		breaker.breakText(text, measurer);
+		breaker.setMaxWidthLines(5, -1);
+		breaker.breakText(new StringBuilder(text), measurer);
+		assertEquals(Arrays.asList("the", "quick", "brown", "fox", "jumps", "over"), breaker.getLines());
+	}
+}